@@ -1,75 +1,484 @@
 package net.ornithemc.condor;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import net.ornithemc.condor.cache.CacheKey;
+import net.ornithemc.condor.cache.ClassCache;
+import net.ornithemc.condor.cache.IncrementalManifest;
 import net.ornithemc.condor.lvt.LocalVariableNamer;
 import net.ornithemc.condor.lvt.LocalVariableTableGenerator;
 import net.ornithemc.condor.lvt.LocalVariableTables;
 import net.ornithemc.condor.representation.ClassInstance;
+import net.ornithemc.condor.representation.ClassSource;
+import net.ornithemc.condor.representation.ClassSourcePool;
 import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.JarInstance;
+import net.ornithemc.condor.representation.Libraries;
+import net.ornithemc.condor.representation.MemoryClassSource;
 
 public class Condor {
 
+	// generators and namers are not thread-safe, so each thread gets its own,
+	// which is reused for as long as the thread lives
+	private static final ThreadLocal<LocalVariableTableGenerator> LOCAL_VARIABLE_TABLE_GENERATORS = ThreadLocal.withInitial(LocalVariableTableGenerator::new);
+	private static final ThreadLocal<LocalVariableNamer> LOCAL_VARIABLE_NAMERS = ThreadLocal.withInitial(LocalVariableNamer::new);
+
+	private static String version;
+
+	/**
+	 * @return the Condor version, as declared in the jar manifest
+	 */
+	public static String getVersion() {
+		if (version == null) {
+			String implementationVersion = Condor.class.getPackage().getImplementationVersion();
+			// when not run from a jar, e.g. during development
+			version = (implementationVersion == null) ? "unknown" : implementationVersion;
+		}
+
+		return version;
+	}
+
+	/**
+	 * Results of earlier runs, in the class cache and in incremental
+	 * manifests, are only reused by the same build of Condor. Builds that do
+	 * not declare a version, such as during development, are told apart by
+	 * the contents of their class files instead.
+	 *
+	 * @return the id of this build of Condor, or {@code null} if it cannot
+	 *         be determined
+	 */
+	public static String getBuildId() {
+		return Build.ID;
+	}
+
+	private static String findBuildId() {
+		String implementationVersion = Condor.class.getPackage().getImplementationVersion();
+
+		if (implementationVersion != null) {
+			return implementationVersion;
+		}
+
+		CodeSource codeSource = Condor.class.getProtectionDomain().getCodeSource();
+
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return null;
+		}
+
+		try {
+			return "dev-" + CacheKey.hashClasses(Paths.get(codeSource.getLocation().toURI()));
+		} catch (IOException | URISyntaxException | FileSystemNotFoundException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
 	public static void run(Path jar, Path... libs) throws IOException {
 		run(jar, Arrays.asList(libs), Options.builder().build());
 	}
 
 	public static void run(Path jar, List<Path> libs, Options options) throws IOException {
-		Classpath classpath = new Classpath(jar, libs);
+		checkOutput(options.output, options);
+
+		ClassCache cache = createCache(options);
+
+		run(jar, options.output, new Libraries(libs, options.jre), true, options, cache, options.threads);
+
+		if (cache != null) {
+			cache.evict();
+		}
+	}
+
+	/**
+	 * Process the given class files in memory, rather than a jar on disk. The
+	 * given libraries must be open, and can be reused for many calls.
+	 *
+	 * @return all class files, by the internal names of the classes they
+	 *         declare, with modified classes replaced by their new class files
+	 * @throws IllegalArgumentException if several class files declare the
+	 *         same class
+	 */
+	public static Map<String, byte[]> run(Collection<byte[]> classFiles, Libraries libraries, Options options) throws IOException {
+		ClassCache cache = createCache(options);
+
+		Map<String, byte[]> result = run(classFiles, libraries, options, cache);
+
+		if (cache != null) {
+			cache.evict();
+		}
+
+		return result;
+	}
+
+	static Map<String, byte[]> run(Collection<byte[]> classFiles, Libraries libraries, Options options, ClassCache cache) throws IOException {
+		MemoryClassSource source = new MemoryClassSource(classFiles);
+		run(new Classpath(source, libraries), options, cache, null, options.threads);
+
+		return source.getClassFiles();
+	}
+
+	/**
+	 * Process a single class file in memory. The given libraries must be open,
+	 * and can be reused for many calls.
+	 *
+	 * @return the new class file, or the given class file if the class did not
+	 *         need any changes
+	 */
+	public static byte[] run(byte[] classFile, Libraries libraries, Options options) throws IOException {
+		return run(Collections.singleton(classFile), libraries, options).values().iterator().next();
+	}
+
+	/**
+	 * Process many jars in one go. Libraries that are used by several jobs
+	 * are only opened once, and jobs are run in parallel according to the
+	 * thread count of the given options. Any output path in the options is
+	 * ignored in favor of those of the jobs.
+	 */
+	public static void runBatch(List<Job> jobs, Options options) throws IOException {
+		// reject invalid jobs before any of them are run
+		for (Job job : jobs) {
+			checkOutput(job.output, options);
+		}
+
+		ClassCache cache = createCache(options);
+
+		try (ClassSourcePool pool = new ClassSourcePool(options.jre)) {
+			ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+
+			try {
+				List<Future<?>> tasks = new ArrayList<>();
+
+				for (Job job : jobs) {
+					tasks.add(executor.submit(() -> {
+						run(pool, job, options, cache, 1);
+
+						return null;
+					}));
+				}
+
+				awaitAll(tasks);
+			} finally {
+				executor.shutdownNow();
+			}
+
+			if (cache != null) {
+				cache.evict();
+			}
+		}
+	}
+
+	/**
+	 * Process a job with libraries from the given pool.
+	 */
+	static void run(ClassSourcePool pool, Job job, Options options, ClassCache cache, int threads) throws IOException {
+		Libraries libraries = pool.acquire(job.libs);
 
+		try {
+			run(job.jar, job.output, libraries, false, options, cache, threads);
+		} finally {
+			pool.release(libraries);
+		}
+	}
+
+	/**
+	 * Process the given jar, writing the result to the given output jar, or
+	 * to the jar itself if no output is given. In incremental mode, only
+	 * classes that changed since the previous run into the output jar are
+	 * processed.
+	 */
+	static void run(Path jar, Path output, Libraries libraries, boolean ownsLibraries, Options options, ClassCache cache, int threads) throws IOException {
+		checkOutput(output, options);
+
+		IncrementalManifest manifest = null;
+		ClassSource source;
+
+		if (output == null) {
+			source = new JarInstance(jar, true);
+		} else if (options.incremental) {
+			manifest = IncrementalManifest.read(output, options);
+			source = new JarInstance(jar, output, manifest.hasPrevious());
+		} else {
+			source = new JarInstance(jar, output);
+		}
+
+		// the output jar is about to be replaced, and if the run fails part
+		// way, any manifest of the previous run must not be trusted
+		if (output != null) {
+			IncrementalManifest.delete(output);
+		}
+
+		run(new Classpath(source, libraries, ownsLibraries), options, cache, manifest, threads);
+
+		// only written once the output jar is in place
+		if (manifest != null) {
+			manifest.write(output, options);
+		}
+	}
+
+	private static void checkOutput(Path output, Options options) {
+		if (options.incremental && output == null) {
+			throw new IllegalArgumentException("incremental mode requires an output jar");
+		}
+	}
+
+	static void run(Classpath classpath, Options options, ClassCache cache, IncrementalManifest manifest, int threads) throws IOException {
 		try {
 			// open file systems and parse main jar
 			classpath.open();
 
-			// create a local variable table generator that can be reused
-			LocalVariableTableGenerator localVariableTableGenerator = new LocalVariableTableGenerator();
-			// create a local variable namer that can be reused
-			LocalVariableNamer localVariableNamer = new LocalVariableNamer();
+			if (threads > 1) {
+				runParallel(classpath, options, cache, manifest, threads);
+			} else {
+				runSerial(classpath, options, cache, manifest);
+			}
 
-			// generate local variable tables for the main jar
-			for (ClassInstance cls : classpath.getMainJar().getClasses()) {
-				ClassNode node = cls.getNode();
+			if (options.stats) {
+				printStats(classpath);
+			}
+		} catch (Throwable t) {
+			// a partially processed jar must not replace a previous output
+			try {
+				classpath.abort();
+			} catch (Throwable suppressed) {
+				t.addSuppressed(suppressed);
+			}
 
-				for (MethodNode mtd : node.methods) {
-					boolean generateLvt = !LocalVariableTables.isComplete(mtd);
+			throw t;
+		}
 
-					if (generateLvt) {
-						localVariableTableGenerator.init(classpath, node, mtd);
-						localVariableTableGenerator.run();
+		// write output and close file systems
+		classpath.close();
+	}
 
-						if (options.removeInvalidEntries) {
-							LocalVariableTables.removeInvalidEntries(node, mtd);
-						}
-					}
+	private static void printStats(Classpath classpath) {
+		long hits = classpath.getCommonSuperTypeHits();
+		long misses = classpath.getCommonSuperTypeMisses();
+		long lookups = hits + misses;
 
-					boolean nameVariables = (mtd.localVariables != null);
+		// stdout may be used by the daemon protocol
+		System.err.printf("common super types: %d lookups, %d hits, %d misses (%.1f%% hit rate)%n", lookups, hits, misses, (lookups == 0) ? 0.0 : 100.0 * hits / lookups);
+	}
 
-					if (nameVariables) {
-						// generate local variable names
-						localVariableNamer.init(options, mtd);
-						localVariableNamer.run(generateLvt);
-					}
+	static ClassCache createCache(Options options) {
+		if (options.cache == null) {
+			return null;
+		}
+		if (getBuildId() == null) {
+			// cached classes could have been processed by another build
+			System.err.println("cannot identify the Condor build, the class cache is disabled");
+			return null;
+		}
+
+		return new ClassCache(options.cache, options.cacheSize);
+	}
+
+	private static void runSerial(Classpath classpath, Options options, ClassCache cache, IncrementalManifest manifest) throws IOException {
+		LocalVariableTableGenerator localVariableTableGenerator = LOCAL_VARIABLE_TABLE_GENERATORS.get();
+		LocalVariableNamer localVariableNamer = LOCAL_VARIABLE_NAMERS.get();
+
+		// generate local variable tables for the main jar
+		for (ClassInstance cls : classpath.getMainJar().getClasses()) {
+			processClass(classpath, cls, options, cache, manifest, localVariableTableGenerator, localVariableNamer);
+		}
+	}
+
+	private static void runParallel(Classpath classpath, Options options, ClassCache cache, IncrementalManifest manifest, int threads) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+
+			for (ClassInstance cls : classpath.getMainJar().getClasses()) {
+				tasks.add(executor.submit(() -> {
+					processClass(classpath, cls, options, cache, manifest, LOCAL_VARIABLE_TABLE_GENERATORS.get(), LOCAL_VARIABLE_NAMERS.get());
+					return null;
+				}));
+			}
+
+			awaitAll(tasks);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-					if (generateLvt || (nameVariables && options.obfuscateNames)) {
-						// mark the class for saving
-						cls.markDirty();
+	private static void awaitAll(List<Future<?>> tasks) throws IOException {
+		try {
+			for (Future<?> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
 					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+
+					throw new RuntimeException(cause);
 				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while processing classes");
+		}
+	}
+
+	private static void processClass(Classpath classpath, ClassInstance cls, Options options, ClassCache cache, IncrementalManifest manifest, LocalVariableTableGenerator localVariableTableGenerator, LocalVariableNamer localVariableNamer) throws IOException {
+		byte[] classFile = cls.getClassFile();
+
+		if (manifest == null || classFile == null) {
+			processClass(classpath, cls, classFile, options, cache, localVariableTableGenerator, localVariableNamer);
+		} else {
+			String inputHash = CacheKey.hash(classFile);
+			String hierarchyHash = CacheKey.computeHierarchy(classpath, classFile);
+
+			IncrementalManifest.Entry previous = manifest.getPrevious(cls.getName(), inputHash, hierarchyHash);
+			boolean changed;
+
+			// neither the class nor the hierarchy it depends on changed since the
+			// previous run, so the previous output for this class is still valid
+			if (previous != null && (!previous.isChanged() || classpath.getMainJar().reuseClass(cls.getName()))) {
+				changed = previous.isChanged();
+			} else {
+				changed = processClass(classpath, cls, classFile, options, cache, localVariableTableGenerator, localVariableNamer);
+			}
+
+			manifest.put(cls.getName(), inputHash, hierarchyHash, changed);
+		}
+	}
+
+	/**
+	 * @return whether a new class file was written for the class
+	 */
+	private static boolean processClass(Classpath classpath, ClassInstance cls, byte[] classFile, Options options, ClassCache cache, LocalVariableTableGenerator localVariableTableGenerator, LocalVariableNamer localVariableNamer) throws IOException {
+		String cacheKey = null;
+
+		if (cache != null && classFile != null) {
+			cacheKey = CacheKey.compute(classpath, classFile, options);
+			ClassCache.Entry entry = cache.get(cacheKey);
 
-				// and write the class if any of its method has a new lvt
-				if (cls.isDirty()) {
-					classpath.getMainJar().writeClass(cls.getName());
+			if (entry != null) {
+				// this exact class has been processed before
+				if (entry.getClassFile() != null) {
+					classpath.getMainJar().writeClass(cls.getName(), entry.getClassFile());
+					return true;
 				}
+
+				return false;
 			}
-		} finally {
-			// close file systems
-			classpath.close();
 		}
+
+		ClassReader reader = (classFile == null) ? null : new ClassReader(classFile);
+
+		// most classes in partly debug-compiled jars need no work at all,
+		// and those do not need to be parsed fully
+		if (reader != null && !LocalVariableTables.needsProcessing(reader, options.obfuscateNames)) {
+			if (cacheKey != null) {
+				cache.putUnchanged(cacheKey);
+			}
+
+			return false;
+		}
+
+		ClassNode node = (reader == null) ? cls.getNode() : cls.getNode(reader);
+
+		if (node == null) {
+			// the class file is not available, so the class is left as it is
+			return false;
+		}
+
+		for (MethodNode mtd : node.methods) {
+			if (processMethod(classpath, node, mtd, options, localVariableTableGenerator, localVariableNamer)) {
+				// mark the class for saving
+				cls.markDirty();
+			}
+		}
+
+		// and write the class if any of its method has a new lvt
+		if (cls.isDirty()) {
+			ClassWriter writer = new ClassWriter(0);
+			node.accept(writer);
+			byte[] bytes = writer.toByteArray();
+
+			classpath.getMainJar().writeClass(cls.getName(), bytes);
+
+			if (cacheKey != null) {
+				cache.put(cacheKey, bytes);
+			}
+		} else if (cacheKey != null) {
+			cache.putUnchanged(cacheKey);
+		}
+
+		// the class tree is no longer needed
+		cls.releaseNode();
+
+		return cls.isDirty();
+	}
+
+	/**
+	 * Generate the lvt of the given method if it is incomplete, and name its
+	 * local variables.
+	 *
+	 * @return whether the method was modified
+	 */
+	static boolean processMethod(Classpath classpath, ClassNode node, MethodNode mtd, Options options, LocalVariableTableGenerator localVariableTableGenerator, LocalVariableNamer localVariableNamer) {
+		boolean generateLvt = !LocalVariableTables.isComplete(mtd);
+
+		if (generateLvt) {
+			localVariableTableGenerator.init(classpath, node, mtd);
+			localVariableTableGenerator.run();
+
+			if (options.removeInvalidEntries) {
+				LocalVariableTables.removeInvalidEntries(node, mtd);
+			}
+		}
+
+		boolean nameVariables = (mtd.localVariables != null);
+
+		if (nameVariables) {
+			// generate local variable names
+			localVariableNamer.init(options, mtd);
+			localVariableNamer.run(generateLvt);
+		}
+
+		return generateLvt || (nameVariables && options.obfuscateNames);
+	}
+
+	static LocalVariableTableGenerator getLocalVariableTableGenerator() {
+		return LOCAL_VARIABLE_TABLE_GENERATORS.get();
+	}
+
+	static LocalVariableNamer getLocalVariableNamer() {
+		return LOCAL_VARIABLE_NAMERS.get();
+	}
+
+	private static class Build {
+
+		// found once, when first needed
+		static final String ID = findBuildId();
 	}
 }
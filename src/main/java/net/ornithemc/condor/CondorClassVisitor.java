@@ -0,0 +1,66 @@
+package net.ornithemc.condor;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.util.ASM;
+
+/**
+ * A class visitor that generates local variable tables as part of an existing
+ * visitor chain, rather than in a separate pass over a class tree.
+ *
+ * <p>
+ * Only one method at a time is buffered. Once a method has been visited in
+ * full, its lvt is generated if it is incomplete, its local variables are
+ * named, and it is passed on to the next visitor.
+ *
+ * <p>
+ * Visited classes must be present in the given classpath, as their hierarchy
+ * is needed to compute the types of local variables. Stack map frames must
+ * not be expanded by the class reader, that is {@code ClassReader.EXPAND_FRAMES}
+ * must not be used.
+ */
+public class CondorClassVisitor extends ClassVisitor {
+
+	private final Classpath classpath;
+	private final Options options;
+
+	// the generator only needs the name of the class
+	private final ClassNode node;
+
+	public CondorClassVisitor(ClassVisitor next, Classpath classpath, Options options) {
+		super(ASM.API_VERSION, next);
+
+		this.classpath = classpath;
+		this.options = options;
+
+		this.node = new ClassNode();
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		this.node.name = name;
+
+		super.visit(version, access, name, signature, superName, interfaces);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		return new MethodNode(ASM.API_VERSION, access, name, descriptor, signature, exceptions) {
+
+			@Override
+			public void visitEnd() {
+				super.visitEnd();
+
+				Condor.processMethod(CondorClassVisitor.this.classpath, CondorClassVisitor.this.node, this, CondorClassVisitor.this.options, Condor.getLocalVariableTableGenerator(), Condor.getLocalVariableNamer());
+
+				if (CondorClassVisitor.this.cv != null) {
+					this.accept(CondorClassVisitor.this.cv);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,226 @@
+package net.ornithemc.condor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.ornithemc.condor.cache.ClassCache;
+import net.ornithemc.condor.representation.ClassSourcePool;
+
+/**
+ * A long-lived process that runs jobs on request. The JRE and library class
+ * sources are kept open between jobs, so repeated jobs against the same
+ * libraries do not need to read them again.
+ *
+ * <p>
+ * Requests and responses are single lines of UTF-8 text, with the fields of
+ * a request separated by tabs:
+ * <ul>
+ * <li>{@code run <jar> <output jar or -> [<lib>...]} processes a jar</li>
+ * <li>{@code ping} checks that the daemon is alive</li>
+ * <li>{@code shutdown} stops the daemon</li>
+ * </ul>
+ * Each request is answered with either {@code ok} or {@code error <message>}.
+ */
+public class Daemon implements Closeable {
+
+	// how many jobs to run between evictions from the cache
+	private static final int EVICTION_INTERVAL = 64;
+
+	private final Options options;
+	private final ClassSourcePool pool;
+	private final ClassCache cache;
+	private final AtomicInteger jobs;
+	// open connections, closed on shutdown so idle clients do not keep the daemon alive
+	private final Set<Socket> connections;
+
+	private volatile boolean running;
+	private volatile ServerSocket server;
+
+	public Daemon(Options options) throws IOException {
+		this.options = options;
+		this.pool = new ClassSourcePool(options.jre);
+		this.cache = Condor.createCache(options);
+		this.jobs = new AtomicInteger();
+		this.connections = ConcurrentHashMap.newKeySet();
+
+		this.running = true;
+	}
+
+	/**
+	 * Accept connections on the given local port until a shutdown is requested.
+	 * Connections are served concurrently.
+	 *
+	 * @param port the port to listen on, or 0 to pick any free port
+	 * @param listener notified of the port once the daemon is listening
+	 */
+	public void listen(int port, PortListener listener) throws IOException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			this.server = server;
+
+			if (listener != null) {
+				listener.listening(server.getLocalPort());
+			}
+
+			while (this.running) {
+				Socket socket;
+
+				try {
+					socket = server.accept();
+				} catch (SocketException e) {
+					// the socket is closed on shutdown
+					if (!this.running) {
+						break;
+					}
+
+					throw e;
+				}
+
+				this.connections.add(socket);
+
+				executor.execute(() -> {
+					try (Socket s = socket) {
+						this.serve(s.getInputStream(), s.getOutputStream());
+					} catch (IOException e) {
+						// the connection was lost, nothing to report it to
+					} finally {
+						this.connections.remove(socket);
+					}
+				});
+			}
+		} finally {
+			for (Socket socket : this.connections) {
+				socket.close();
+			}
+
+			executor.shutdown();
+
+			try {
+				// finish requests that are already running
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Serve requests from the given input until it ends or a shutdown is
+	 * requested.
+	 */
+	public void serve(InputStream input, OutputStream output) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+		String line;
+
+		while (this.running && (line = in.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+
+			String response;
+
+			try {
+				response = this.handle(line.split("\\t"));
+			} catch (Throwable t) {
+				response = "error " + String.valueOf(t).replace('\n', ' ');
+			}
+
+			out.write(response);
+			out.write('\n');
+			out.flush();
+		}
+	}
+
+	private String handle(String[] request) throws IOException {
+		switch (request[0]) {
+		case "run":
+			if (request.length < 3) {
+				return "error expected at least a jar and an output";
+			}
+
+			Job job = parseJob(request);
+			Condor.run(this.pool, job, this.options, this.cache, this.options.threads);
+
+			if (this.cache != null && this.jobs.incrementAndGet() % EVICTION_INTERVAL == 0) {
+				this.cache.evict();
+			}
+
+			return "ok";
+		case "ping":
+			return "ok";
+		case "shutdown":
+			this.shutdown();
+			return "ok";
+		default:
+			return "error unknown request " + request[0];
+		}
+	}
+
+	private static Job parseJob(String[] request) {
+		List<Path> libs = new ArrayList<>();
+
+		for (int i = 3; i < request.length; i++) {
+			libs.add(Paths.get(request[i]));
+		}
+
+		return new Job(Paths.get(request[1]), "-".equals(request[2]) ? null : Paths.get(request[2]), libs);
+	}
+
+	/**
+	 * Stop accepting requests. Requests that are already running are finished.
+	 */
+	public void shutdown() throws IOException {
+		this.running = false;
+
+		ServerSocket server = this.server;
+
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.shutdown();
+
+		try {
+			if (this.cache != null) {
+				this.cache.evict();
+			}
+		} finally {
+			this.pool.close();
+		}
+	}
+
+	public interface PortListener {
+
+		void listening(int port);
+
+	}
+}
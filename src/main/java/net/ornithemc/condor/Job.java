@@ -0,0 +1,25 @@
+package net.ornithemc.condor;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A main jar to process, along with its libraries.
+ */
+public class Job {
+
+	public final Path jar;
+	public final Path output;
+	public final List<Path> libs;
+
+	/**
+	 * @param output the jar to write the processed jar to, or {@code null} to
+	 *               modify the main jar in place
+	 */
+	public Job(Path jar, Path output, List<Path> libs) {
+		this.jar = jar;
+		this.output = output;
+		this.libs = Collections.unmodifiableList(libs);
+	}
+}
@@ -1,25 +1,36 @@
 package net.ornithemc.condor;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.ornithemc.condor.representation.HierarchyIndex;
+
 public class Main {
 
 	public static void main(String... args) throws Exception {
 		if (args.length < 1) {
 			System.out.println("Expected at least 1 argument, got " + args.length);
-			System.out.println("Usage: <jar> [<lib>...] [--remove-invalid-entries] [--keep-parameter-names] [--obfuscate-names]");
+			System.out.println("Usage: <jar> [<lib>...] [--remove-invalid-entries] [--keep-parameter-names] [--obfuscate-names] [--threads <count>] [--output <jar>] [--cache <dir>] [--cache-size <bytes>[k|m|g]] [--incremental] [--jre <path>] [--stats]");
+			System.out.println("   or: --batch <file> [<options>...]");
+			System.out.println("   or: --daemon [--port <port>] [<options>...]");
+			System.out.println("   or: --write-index <file> [<jar or jdk>]");
+			System.out.println("       where each line of the batch file is <jar>\t<output jar or ->[\t<lib>...]");
 
 			System.exit(1);
 		}
 
-		Path jar = Paths.get(args[0]);
-		List<Path> libs = new ArrayList<>();
+		List<Path> paths = new ArrayList<>();
+		Path batch = null;
+		Path index = null;
+		boolean daemon = false;
+		int port = -1;
 		Options.Builder options = Options.builder();
 
-		for (int i = 1; i < args.length; i++) {
+		for (int i = 0; i < args.length; i++) {
 			String arg = args[i];
 
 			if (arg.startsWith("--")) {
@@ -35,14 +46,147 @@ public class Main {
 				case "obfuscate-names":
 					options.obfuscateNames();
 					break;
+				case "threads":
+					options.threads(Integer.parseInt(nextArg(args, ++i, option)));
+					break;
+				case "output":
+					options.output(Paths.get(nextArg(args, ++i, option)));
+					break;
+				case "cache":
+					options.cache(Paths.get(nextArg(args, ++i, option)));
+					break;
+				case "cache-size":
+					options.cacheSize(parseSize(nextArg(args, ++i, option)));
+					break;
+				case "jre":
+					options.jre(Paths.get(nextArg(args, ++i, option)));
+					break;
+				case "incremental":
+					options.incremental();
+					break;
+				case "stats":
+					options.stats();
+					break;
+				case "batch":
+					batch = Paths.get(nextArg(args, ++i, option));
+					break;
+				case "write-index":
+					index = Paths.get(nextArg(args, ++i, option));
+					break;
+				case "daemon":
+					daemon = true;
+					break;
+				case "port":
+					port = Integer.parseInt(nextArg(args, ++i, option));
+					break;
 				default:
 					throw new IllegalArgumentException("unknown option " + option);
 				}
 			} else {
-				libs.add(Paths.get(arg));
+				paths.add(Paths.get(arg));
 			}
 		}
 
-		Condor.run(jar, libs, options.build());
+		if (index != null) {
+			if (paths.size() > 1) {
+				throw new IllegalArgumentException("a hierarchy index can only be written for one jar or jdk at a time");
+			}
+
+			// without a jar or jdk, index the runtime condor is running on
+			HierarchyIndex.write(paths.isEmpty() ? null : paths.get(0), index);
+		} else if (daemon) {
+			if (!paths.isEmpty() || batch != null) {
+				throw new IllegalArgumentException("jars must be given in requests to the daemon, not on the command line");
+			}
+
+			try (Daemon d = new Daemon(options.build())) {
+				if (port < 0) {
+					// requests are read from stdin and answered on stdout
+					d.serve(System.in, System.out);
+				} else {
+					d.listen(port, p -> {
+						// let clients know which port to connect to
+						System.out.println("listening on port " + p);
+						System.out.flush();
+					});
+				}
+			}
+		} else if (batch != null) {
+			if (!paths.isEmpty()) {
+				throw new IllegalArgumentException("jars must be given in the batch file, not on the command line");
+			}
+
+			Condor.runBatch(readBatchFile(batch), options.build());
+		} else {
+			if (paths.isEmpty()) {
+				throw new IllegalArgumentException("no jar given");
+			}
+
+			Path jar = paths.get(0);
+			List<Path> libs = paths.subList(1, paths.size());
+
+			Condor.run(jar, libs, options.build());
+		}
+	}
+
+	private static List<Job> readBatchFile(Path file) throws IOException {
+		List<Job> jobs = new ArrayList<>();
+		int lineNumber = 0;
+
+		for (String line : Files.readAllLines(file)) {
+			lineNumber++;
+
+			if (line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+
+			String[] columns = line.split("\t");
+
+			if (columns.length < 2) {
+				throw new IllegalArgumentException("invalid batch file entry on line " + lineNumber + ": expected at least a jar and an output");
+			}
+
+			Path jar = Paths.get(columns[0]);
+			Path output = "-".equals(columns[1]) ? null : Paths.get(columns[1]);
+			List<Path> libs = new ArrayList<>();
+
+			for (int i = 2; i < columns.length; i++) {
+				libs.add(Paths.get(columns[i]));
+			}
+
+			jobs.add(new Job(jar, output, libs));
+		}
+
+		return jobs;
+	}
+
+	private static String nextArg(String[] args, int i, String option) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("missing value for option " + option);
+		}
+
+		return args[i];
+	}
+
+	private static long parseSize(String size) {
+		int shift = 0;
+
+		switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+		case 'k':
+			shift = 10;
+			break;
+		case 'm':
+			shift = 20;
+			break;
+		case 'g':
+			shift = 30;
+			break;
+		}
+
+		if (shift > 0) {
+			size = size.substring(0, size.length() - 1);
+		}
+
+		return Long.parseLong(size) << shift;
 	}
 }
@@ -1,15 +1,31 @@
 package net.ornithemc.condor;
 
+import java.nio.file.Path;
+
 public class Options {
 
 	public final boolean removeInvalidEntries;
 	public final boolean keepParameterNames;
 	public final boolean obfuscateNames;
+	public final int threads;
+	public final Path output;
+	public final Path cache;
+	public final long cacheSize;
+	public final boolean incremental;
+	public final Path jre;
+	public final boolean stats;
 
-	Options(boolean removeInvalidEntries, boolean keepParameterNames, boolean obfuscateNames) {
+	Options(boolean removeInvalidEntries, boolean keepParameterNames, boolean obfuscateNames, int threads, Path output, Path cache, long cacheSize, boolean incremental, Path jre, boolean stats) {
 		this.removeInvalidEntries = removeInvalidEntries;
 		this.keepParameterNames = keepParameterNames;
 		this.obfuscateNames = obfuscateNames;
+		this.threads = threads;
+		this.output = output;
+		this.cache = cache;
+		this.cacheSize = cacheSize;
+		this.incremental = incremental;
+		this.jre = jre;
+		this.stats = stats;
 	}
 
 	public static Builder builder() {
@@ -21,6 +37,13 @@ public class Options {
 		private boolean removeInvalidLvtEntries;
 		private boolean keepParameterNames;
 		private boolean obfuscateNames;
+		private int threads = 1;
+		private Path output;
+		private Path cache;
+		private long cacheSize = 1L << 30;
+		private boolean incremental;
+		private Path jre;
+		private boolean stats;
 
 		public Builder removeInvalidEntries() {
 			this.removeInvalidLvtEntries = true;
@@ -37,8 +60,77 @@ public class Options {
 			return this;
 		}
 
+		public Builder threads(int threads) {
+			if (threads < 1) {
+				throw new IllegalArgumentException("thread count must be positive, got " + threads);
+			}
+
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * Write the processed jar to the given path, rather than modifying
+		 * the input jar in place.
+		 */
+		public Builder output(Path output) {
+			this.output = output;
+			return this;
+		}
+
+		/**
+		 * Cache processed classes in the given directory, so that they do not
+		 * need to be processed again in later runs.
+		 */
+		public Builder cache(Path cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * Limit the size of the cache directory to the given number of bytes.
+		 * The least recently used classes are evicted once it grows past this.
+		 */
+		public Builder cacheSize(long cacheSize) {
+			if (cacheSize < 0) {
+				throw new IllegalArgumentException("cache size must not be negative, got " + cacheSize);
+			}
+
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		/**
+		 * Only process classes that changed since the previous run into the
+		 * same output jar, and reuse the previous output for the rest. This
+		 * only applies to runs with an output jar.
+		 */
+		public Builder incremental() {
+			this.incremental = true;
+			return this;
+		}
+
+		/**
+		 * Read JDK classes from the given JDK or JRE home, or rt.jar, rather
+		 * than from the runtime Condor is running on. This should be the
+		 * runtime the processed jar targets.
+		 */
+		public Builder jre(Path jre) {
+			this.jre = jre;
+			return this;
+		}
+
+		/**
+		 * Print statistics about each run to standard error, such as how
+		 * effective the common super type memo was.
+		 */
+		public Builder stats() {
+			this.stats = true;
+			return this;
+		}
+
 		public Options build() {
-			return new Options(this.removeInvalidLvtEntries, this.keepParameterNames, this.obfuscateNames);
+			return new Options(this.removeInvalidLvtEntries, this.keepParameterNames, this.obfuscateNames, this.threads, this.output, this.cache, this.cacheSize, this.incremental, this.jre, this.stats);
 		}
 	}
 }
@@ -0,0 +1,121 @@
+package net.ornithemc.condor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+
+import net.ornithemc.condor.cache.ClassCache;
+import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.Libraries;
+import net.ornithemc.condor.representation.MemoryClassSource;
+
+/**
+ * A session for processing many main jars against the same libraries.
+ *
+ * <p>
+ * The session owns the JRE and library class sources, which stay open until
+ * the session is closed. Library classes, and the links between them, are
+ * only read and resolved once, and are reused by every run in the session.
+ * Runs may be started concurrently from several threads.
+ */
+public class Session implements Closeable {
+
+	private final Options options;
+	private final Libraries libraries;
+	private final ClassCache cache;
+
+	private Session(Options options, Libraries libraries) {
+		this.options = options;
+		this.libraries = libraries;
+		this.cache = Condor.createCache(options);
+	}
+
+	/**
+	 * Open a session with the given libraries. Any output path in the options
+	 * is ignored in favor of those given for each run.
+	 */
+	public static Session open(List<Path> libs, Options options) throws IOException {
+		Libraries libraries = new Libraries(libs, options.jre);
+
+		try {
+			libraries.open();
+		} catch (IOException e) {
+			libraries.close();
+			throw e;
+		}
+
+		return new Session(options, libraries);
+	}
+
+	/**
+	 * Process the given jar in place. This is not possible in incremental
+	 * mode, which needs an output jar.
+	 */
+	public void run(Path jar) throws IOException {
+		this.run(jar, null);
+	}
+
+	/**
+	 * Process the given jar, writing the result to the given output jar, or
+	 * to the jar itself if no output is given.
+	 */
+	public void run(Path jar, Path output) throws IOException {
+		Condor.run(jar, output, this.libraries, false, this.options, this.cache, this.options.threads);
+	}
+
+	/**
+	 * Process the given class files in memory.
+	 *
+	 * @return all class files, by the internal names of the classes they
+	 *         declare, with modified classes replaced by their new class files
+	 * @throws IllegalArgumentException if several class files declare the
+	 *         same class
+	 */
+	public Map<String, byte[]> run(Collection<byte[]> classFiles) throws IOException {
+		return Condor.run(classFiles, this.libraries, this.options, this.cache);
+	}
+
+	/**
+	 * Process a single class file in memory.
+	 *
+	 * @return the new class file, or the given class file if the class did not
+	 *         need any changes
+	 */
+	public byte[] run(byte[] classFile) throws IOException {
+		return this.run(Collections.singleton(classFile)).values().iterator().next();
+	}
+
+	/**
+	 * Create a classpath for the given class files with the libraries of this
+	 * session, for use with {@link CondorClassVisitor}. The classpath must be
+	 * opened before use and closed afterwards.
+	 */
+	public Classpath classpath(Collection<byte[]> classFiles) {
+		return new Classpath(new MemoryClassSource(classFiles), this.libraries);
+	}
+
+	/**
+	 * @return a class visitor that generates lvts for classes from the given
+	 *         classpath and passes them on to the given visitor
+	 */
+	public ClassVisitor visitor(ClassVisitor next, Classpath classpath) {
+		return new CondorClassVisitor(next, classpath, this.options);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.cache != null) {
+				this.cache.evict();
+			}
+		} finally {
+			this.libraries.close();
+		}
+	}
+}
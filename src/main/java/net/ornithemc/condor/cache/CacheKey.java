@@ -0,0 +1,271 @@
+package net.ornithemc.condor.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import net.ornithemc.condor.Condor;
+import net.ornithemc.condor.Options;
+import net.ornithemc.condor.representation.ClassInstance;
+import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.util.ASM;
+
+/**
+ * Computes the keys under which processed classes are cached.
+ *
+ * <p>
+ * The output for a class depends on more than its own class file. The local
+ * variable types are computed from the class hierarchy of every type that
+ * can end up in a stack frame, and all of those types are referenced from
+ * the constant pool or from the descriptors of the class. The key therefore
+ * covers the class file, the options that affect the output, the Condor
+ * build, and the hierarchies of all referenced types.
+ */
+public class CacheKey {
+
+	// constant pool tags, see JVMS 4.4
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * @return the cache key for the given class file
+	 */
+	public static String compute(Classpath classpath, byte[] classFile, Options options) {
+		return compute(Condor.getBuildId(), classpath, classFile, options);
+	}
+
+	/**
+	 * @return the cache key for the given class file, as processed by the
+	 *         given build of Condor
+	 */
+	static String compute(String buildId, Classpath classpath, byte[] classFile, Options options) {
+		MessageDigest digest = newDigest();
+
+		update(digest, buildId);
+		update(digest, getOptionFlags(options));
+		digest.update(classFile);
+		putHierarchy(digest, classpath, getReferencedClasses(new ClassReader(classFile)));
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return a hash of the given data
+	 */
+	public static String hash(byte[] data) {
+		return toHex(newDigest().digest(data));
+	}
+
+	/**
+	 * @return a hash of all class files at the given location, which is
+	 *         either a directory of class files or a jar
+	 */
+	public static String hashClasses(Path location) throws IOException {
+		MessageDigest digest = newDigest();
+
+		if (Files.isDirectory(location)) {
+			List<Path> classFiles;
+
+			try (Stream<Path> files = Files.walk(location)) {
+				classFiles = files
+					.filter(file -> file.getFileName().toString().endsWith(".class"))
+					.sorted()
+					.collect(Collectors.toList());
+			}
+
+			for (Path classFile : classFiles) {
+				update(digest, location.relativize(classFile).toString());
+				digest.update(Files.readAllBytes(classFile));
+			}
+		} else {
+			try (InputStream in = Files.newInputStream(location)) {
+				byte[] buffer = new byte[8192];
+
+				for (int n; (n = in.read(buffer)) > 0; ) {
+					digest.update(buffer, 0, n);
+				}
+			}
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return a fingerprint of the hierarchies of all types referenced from
+	 *         the given class file
+	 */
+	public static String computeHierarchy(Classpath classpath, byte[] classFile) {
+		MessageDigest digest = newDigest();
+		putHierarchy(digest, classpath, getReferencedClasses(new ClassReader(classFile)));
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return the options flags that affect the output for a class
+	 */
+	public static String getOptionFlags(Options options) {
+		return (options.removeInvalidEntries ? "r" : "-") + (options.keepParameterNames ? "k" : "-") + (options.obfuscateNames ? "o" : "-");
+	}
+
+	/**
+	 * @return the names of all classes referenced from the constant pool or
+	 *         from field and method descriptors of the given class file
+	 */
+	public static Set<String> getReferencedClasses(ClassReader reader) {
+		Set<String> classes = new TreeSet<>();
+		char[] buffer = new char[reader.getMaxStringLength()];
+
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+
+			// the second slot of long and double constants has no offset
+			if (offset == 0) {
+				continue;
+			}
+
+			switch (reader.readByte(offset - 1)) {
+			case CONSTANT_CLASS:
+				String name = reader.readUTF8(offset, buffer);
+
+				if (name.charAt(0) == '[') {
+					addDescriptorClasses(classes, name);
+				} else {
+					classes.add(name);
+				}
+
+				break;
+			case CONSTANT_NAME_AND_TYPE:
+				addDescriptorClasses(classes, reader.readUTF8(offset + 2, buffer));
+				break;
+			case CONSTANT_METHOD_TYPE:
+				addDescriptorClasses(classes, reader.readUTF8(offset, buffer));
+				break;
+			}
+		}
+
+		// descriptors of the class' own fields and methods are only
+		// referenced from the constant pool as plain strings
+		reader.accept(new ClassVisitor(ASM.API_VERSION) {
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				addDescriptorClasses(classes, descriptor);
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				addDescriptorClasses(classes, descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return classes;
+	}
+
+	private static void addDescriptorClasses(Set<String> classes, String descriptor) {
+		for (int i = 0; i < descriptor.length(); i++) {
+			if (descriptor.charAt(i) == 'L') {
+				int end = descriptor.indexOf(';', i);
+				classes.add(descriptor.substring(i + 1, end));
+				i = end;
+			}
+		}
+	}
+
+	/**
+	 * Add the hierarchies of the given classes, that is all of their super
+	 * classes and interfaces, to the given digest. Classes missing from the
+	 * classpath are included as such.
+	 */
+	public static void putHierarchy(MessageDigest digest, Classpath classpath, Set<String> classNames) {
+		Map<String, String> hierarchy = new TreeMap<>();
+		Deque<String> queue = new ArrayDeque<>(classNames);
+
+		while (!queue.isEmpty()) {
+			String name = queue.poll();
+
+			if (hierarchy.containsKey(name)) {
+				continue;
+			}
+
+			ClassInstance cls = classpath.getClass(name);
+
+			if (cls == null) {
+				hierarchy.put(name, "?");
+			} else {
+				StringBuilder sb = new StringBuilder();
+
+				sb.append(cls.isInterface() ? 'i' : 'c');
+				sb.append(' ');
+
+				String superName = cls.getSuperClassName();
+
+				if (superName != null) {
+					sb.append(superName);
+					queue.add(superName);
+				}
+				for (String interfaceName : cls.getInterfaceNames()) {
+					sb.append(' ');
+					sb.append(interfaceName);
+					queue.add(interfaceName);
+				}
+
+				hierarchy.put(name, sb.toString());
+			}
+		}
+
+		for (Map.Entry<String, String> entry : hierarchy.entrySet()) {
+			update(digest, entry.getKey());
+			update(digest, entry.getValue());
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+		// terminate each string so that concatenations cannot collide
+		digest.update((byte) 0);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[2 * bytes.length];
+
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+			chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+		}
+
+		return new String(chars);
+	}
+}
@@ -0,0 +1,240 @@
+package net.ornithemc.condor.cache;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An on-disk cache of processed classes, keyed by {@link CacheKey}.
+ *
+ * <p>
+ * Each entry is stored in its own file, fanned out over sub directories by
+ * the first two characters of its key. Entries are written to a temporary
+ * file first and then moved into place, so that several processes can share
+ * a cache directory. The modification time of an entry is updated whenever
+ * it is used, and once the cache grows past its size limit, the least
+ * recently used entries are evicted.
+ */
+public class ClassCache {
+
+	// entries for classes that did not need any changes
+	private static final byte UNCHANGED = 0;
+	// entries for classes with new class files
+	private static final byte CHANGED = 1;
+	// the type and the class file length of entries for changed classes
+	private static final int CHANGED_HEADER_SIZE = 5;
+
+	private final Path directory;
+	private final long maxSize;
+
+	public ClassCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Look up the result for the given key.
+	 *
+	 * @return {@code null} if the cache has no entry for the given key, an
+	 *         {@link Entry} otherwise
+	 */
+	public Entry get(String key) throws IOException {
+		Path file = this.getFile(key);
+		byte[] data;
+
+		try {
+			data = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		Entry entry = readEntry(data);
+
+		if (entry == null) {
+			// corrupt entries, e.g. cut off by a full disk, are treated
+			// as missing, and removed so they are not read again
+			Files.deleteIfExists(file);
+			return null;
+		}
+
+		try {
+			// mark the entry as recently used
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			// evicted in the meantime by another process
+		}
+
+		return entry;
+	}
+
+	/**
+	 * @return the entry stored in the given data, or {@code null} if the
+	 *         data is not a valid entry
+	 */
+	private static Entry readEntry(byte[] data) {
+		if (data.length == 1 && data[0] == UNCHANGED) {
+			return Entry.UNCHANGED;
+		}
+		if (data.length > CHANGED_HEADER_SIZE && data[0] == CHANGED) {
+			int length = ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+
+			if (length == data.length - CHANGED_HEADER_SIZE) {
+				return new Entry(Arrays.copyOfRange(data, CHANGED_HEADER_SIZE, data.length));
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Store the result for a class that did not need any changes.
+	 */
+	public void putUnchanged(String key) throws IOException {
+		this.write(key, new byte[] { UNCHANGED });
+	}
+
+	/**
+	 * Store the new class file for a class.
+	 *
+	 * @throws IllegalArgumentException if the class file is empty
+	 */
+	public void put(String key, byte[] classFile) throws IOException {
+		if (classFile.length == 0) {
+			throw new IllegalArgumentException("empty class file for cache entry " + key);
+		}
+
+		// the length is stored so that cut off entries can be detected
+		byte[] data = new byte[CHANGED_HEADER_SIZE + classFile.length];
+		data[0] = CHANGED;
+		data[1] = (byte) (classFile.length >>> 24);
+		data[2] = (byte) (classFile.length >>> 16);
+		data[3] = (byte) (classFile.length >>> 8);
+		data[4] = (byte) classFile.length;
+		System.arraycopy(classFile, 0, data, CHANGED_HEADER_SIZE, classFile.length);
+
+		this.write(key, data);
+	}
+
+	private void write(String key, byte[] data) throws IOException {
+		Path file = this.getFile(key);
+		Files.createDirectories(file.getParent());
+
+		Path tmp = file.resolveSibling(key + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+		try {
+			Files.write(tmp, data);
+
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries until the cache is within its
+	 * size limit again.
+	 */
+	public void evict() throws IOException {
+		if (!Files.isDirectory(this.directory)) {
+			return;
+		}
+
+		List<CachedFile> files = new ArrayList<>();
+		long size = 0;
+
+		try (DirectoryStream<Path> dirs = Files.newDirectoryStream(this.directory)) {
+			for (Path dir : dirs) {
+				if (!Files.isDirectory(dir)) {
+					continue;
+				}
+
+				try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+					for (Path file : entries) {
+						// entries still being written by another process
+						if (file.getFileName().toString().endsWith(".tmp")) {
+							continue;
+						}
+
+						try {
+							BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+							files.add(new CachedFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+							size += attributes.size();
+						} catch (NoSuchFileException e) {
+							// removed in the meantime by another process
+						}
+					}
+				}
+			}
+		}
+
+		if (size <= this.maxSize) {
+			return;
+		}
+
+		files.sort(Comparator.comparingLong(file -> file.lastUsed));
+
+		for (CachedFile file : files) {
+			if (size <= this.maxSize) {
+				break;
+			}
+
+			Files.deleteIfExists(file.path);
+			size -= file.size;
+		}
+	}
+
+	private Path getFile(String key) {
+		return this.directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+	}
+
+	/**
+	 * A cached result.
+	 */
+	public static class Entry {
+
+		static final Entry UNCHANGED = new Entry(null);
+
+		private final byte[] classFile;
+
+		Entry(byte[] classFile) {
+			this.classFile = classFile;
+		}
+
+		/**
+		 * @return the new class file, or {@code null} if the class did not
+		 *         need any changes
+		 */
+		public byte[] getClassFile() {
+			return this.classFile;
+		}
+	}
+
+	private static class CachedFile {
+
+		final Path path;
+		final long size;
+		final long lastUsed;
+
+		CachedFile(Path path, long size, long lastUsed) {
+			this.path = path;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
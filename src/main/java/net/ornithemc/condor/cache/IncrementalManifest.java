@@ -0,0 +1,185 @@
+package net.ornithemc.condor.cache;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ornithemc.condor.Condor;
+import net.ornithemc.condor.Options;
+
+/**
+ * A manifest of the classes processed into an output jar, kept next to it,
+ * used to reprocess only what changed since the previous run.
+ *
+ * <p>
+ * For each class the manifest holds a hash of its input class file, a hash
+ * of the hierarchies of the types it references (see {@link CacheKey}), and
+ * whether a new class file was written for it. A class whose hashes match
+ * those of the previous run does not need to be processed again, and its
+ * class file can be taken from the previous output.
+ */
+public class IncrementalManifest {
+
+	private static final String HEADER = "condor-incremental 1";
+
+	// the entries from the previous run
+	private final Map<String, Entry> previous;
+	// the entries for the current run
+	private final Map<String, Entry> current;
+
+	private IncrementalManifest(Map<String, Entry> previous) {
+		this.previous = previous;
+		this.current = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return the manifest file for the given output jar
+	 */
+	public static Path getPath(Path output) {
+		output = output.toAbsolutePath();
+		return output.resolveSibling(output.getFileName() + ".condor");
+	}
+
+	/**
+	 * Read the manifest of the previous run for the given output jar. If there
+	 * was no previous run, or it used another Condor build or other options,
+	 * or its output jar is gone, the manifest starts out empty.
+	 */
+	public static IncrementalManifest read(Path output, Options options) throws IOException {
+		Path file = getPath(output);
+
+		if (!Files.exists(file) || !Files.exists(output)) {
+			return new IncrementalManifest(Collections.emptyMap());
+		}
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+		if (lines.size() < 3
+			|| !HEADER.equals(lines.get(0))
+			|| Condor.getBuildId() == null
+			|| !("version " + Condor.getBuildId()).equals(lines.get(1))
+			|| !("options " + CacheKey.getOptionFlags(options)).equals(lines.get(2))) {
+			return new IncrementalManifest(Collections.emptyMap());
+		}
+
+		Map<String, Entry> entries = new HashMap<>();
+
+		for (int i = 3; i < lines.size(); i++) {
+			String[] columns = lines.get(i).split("\t");
+
+			// ignore malformed lines, those classes are simply processed again
+			if (columns.length == 4) {
+				entries.put(columns[0], new Entry(columns[1], columns[2], "1".equals(columns[3])));
+			}
+		}
+
+		return new IncrementalManifest(entries);
+	}
+
+	/**
+	 * Delete the manifest next to the given output jar. This must be done
+	 * before the output jar is replaced, so that a manifest never describes
+	 * an output jar other than the one next to it, even if the run fails.
+	 */
+	public static void delete(Path output) throws IOException {
+		Files.deleteIfExists(getPath(output));
+	}
+
+	/**
+	 * @return whether there are any entries from a previous run
+	 */
+	public boolean hasPrevious() {
+		return !this.previous.isEmpty();
+	}
+
+	/**
+	 * @return the entry for the given class from the previous run, if its
+	 *         hashes match the given ones, {@code null} otherwise
+	 */
+	public Entry getPrevious(String name, String inputHash, String hierarchyHash) {
+		Entry entry = this.previous.get(name);
+
+		if (entry != null && entry.inputHash.equals(inputHash) && entry.hierarchyHash.equals(hierarchyHash)) {
+			return entry;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Record the given class for the current run.
+	 */
+	public void put(String name, String inputHash, String hierarchyHash, boolean changed) {
+		this.current.put(name, new Entry(inputHash, hierarchyHash, changed));
+	}
+
+	/**
+	 * Write the manifest for the current run next to the given output jar.
+	 */
+	public void write(Path output, Options options) throws IOException {
+		Path file = getPath(output);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+				writer.write("version " + Condor.getBuildId());
+				writer.newLine();
+				writer.write("options " + CacheKey.getOptionFlags(options));
+				writer.newLine();
+
+				for (Map.Entry<String, Entry> e : new TreeMap<>(this.current).entrySet()) {
+					Entry entry = e.getValue();
+
+					writer.write(e.getKey());
+					writer.write('\t');
+					writer.write(entry.inputHash);
+					writer.write('\t');
+					writer.write(entry.hierarchyHash);
+					writer.write('\t');
+					writer.write(entry.changed ? '1' : '0');
+					writer.newLine();
+				}
+			}
+
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	public static class Entry {
+
+		final String inputHash;
+		final String hierarchyHash;
+		final boolean changed;
+
+		Entry(String inputHash, String hierarchyHash, boolean changed) {
+			this.inputHash = inputHash;
+			this.hierarchyHash = hierarchyHash;
+			this.changed = changed;
+		}
+
+		/**
+		 * @return whether a new class file was written for the class
+		 */
+		public boolean isChanged() {
+			return this.changed;
+		}
+	}
+}
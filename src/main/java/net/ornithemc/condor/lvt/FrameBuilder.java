@@ -9,10 +9,10 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FrameNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.TryCatchBlockNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
 import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.TypeTable;
 import net.ornithemc.condor.util.ASM;
 
 public class FrameBuilder implements Opcodes {
@@ -29,12 +29,12 @@ public class FrameBuilder implements Opcodes {
 	/**
 	 * for each insn, the corresponding stack frame
 	 */
-	StackFrame[] frames;
+	private StackFrame[] frames;
 
 	/**
 	 * for each insn, the corresponding liveness of all locals
 	 */
-	BitSet[] livenesses;
+	LocalSets livenesses;
 
 	private int[] insnsToProcess;
 	private int insnsToProcessCount;
@@ -49,22 +49,24 @@ public class FrameBuilder implements Opcodes {
 		this.cls = cls;
 		this.method = method;
 
-		Type desc = Type.getMethodType(this.method.desc);
-
-		this.params = desc.getArgumentTypes();
+		this.params = this.classpath.getTypeTable().getArgumentTypes(this.method.desc);
 		this.insns = this.method.instructions;
 
 		this.frames = new StackFrame[this.insns.size()];
 		this.frames[0] = new StackFrame(this.method.maxLocals, this.method.maxStack);
 
-		this.livenesses = new BitSet[this.insns.size()];
+		this.livenesses = new LocalSets(this.insns.size(), this.method.maxLocals);
 
 		this.insnsToProcess = new int[this.insns.size()];
 		this.inInsnsToProcess = new BitSet(this.insns.size());
+	}
 
-		for (int i = 0; i < this.livenesses.length; i++) {
-			this.livenesses[i] = new BitSet(this.method.maxLocals);
-		}
+	/**
+	 * @return the stack frame of the given insn, or {@code null} if the insn
+	 *         is not reachable
+	 */
+	public StackFrame getFrame(int insnIndex) {
+		return this.frames[insnIndex];
 	}
 
 	/**
@@ -77,7 +79,7 @@ public class FrameBuilder implements Opcodes {
 			owner = this.cls.name;
 		}
 
-		this.frames[0].compute(owner, this.params);
+		this.frames[0].compute(owner, this.params, this.classpath.getTypeTable());
 	}
 
 	/**
@@ -92,7 +94,7 @@ public class FrameBuilder implements Opcodes {
 			int insnType = insn.getType();
 
 			if (insnType == AbstractInsnNode.FRAME) {
-				frame.expand(this.cls.name, this.params, (FrameNode) insn);
+				frame.expand(this.cls.name, this.params, (FrameNode) insn, this.classpath.getTypeTable());
 
 				if (lastInsnOrFrameIndex < insnIndex) {
 					// make sure it's applied to any directly preceding label
@@ -119,7 +121,10 @@ public class FrameBuilder implements Opcodes {
 			}
 		}
 
+		TypeTable types = this.classpath.getTypeTable();
 		StackFrame frame = new StackFrame(this.frames[0]);
+		// frame of the exception handlers of the covering try-catch blocks
+		StackFrame handlerFrame = new StackFrame(this.frames[0]);
 
 		for (int insnIndex; (insnIndex = this.nextInsn()) != -1; ) {
 			AbstractInsnNode insn = this.insns.get(insnIndex);
@@ -134,7 +139,7 @@ public class FrameBuilder implements Opcodes {
 				this.enqueueInsn(insnIndex + 1, frame);
 			} else {
 				try {
-					frame.compute(insn);
+					frame.compute(insn, types);
 				} catch (Exception e) {
 					throw new RuntimeException("error computing frame at instruction " + insnIndex, e);
 				}
@@ -163,23 +168,13 @@ public class FrameBuilder implements Opcodes {
 				// if this insn is inside a try-catch block, an exception could
 				// be thrown in which case execution would flow to the exception
 				// handler of that try-catch block
-				for (int i = 0; i < this.method.tryCatchBlocks.size(); i++) {
-					if (insnIndex < this.marker.tryCatchBlockStarts[i] || insnIndex > this.marker.tryCatchBlockEnds[i]) {
-						continue;
-					}
-
-					TryCatchBlockNode tryCatchBlock = this.method.tryCatchBlocks.get(i);
-					Type handlerType = (tryCatchBlock.type == null)
-						? ASM.THROWABLE_TYPE
-						: Type.getObjectType(tryCatchBlock.type);
-					int handlerIndex = this.insns.indexOf(tryCatchBlock.handler);
-
-					StackFrame handlerFrame = new StackFrame(oldFrame);
+				for (int i : this.marker.coveringTryCatchBlocks[insnIndex]) {
+					handlerFrame = handlerFrame.init(oldFrame);
 
 					handlerFrame.clear();
-					handlerFrame.push(handlerType);
+					handlerFrame.push(this.marker.tryCatchBlockTypes[i]);
 
-					this.enqueueInsn(handlerIndex, handlerFrame);
+					this.enqueueInsn(this.marker.tryCatchBlockHandlers[i], handlerFrame);
 				}
 			}
 		}
@@ -238,133 +233,251 @@ public class FrameBuilder implements Opcodes {
 		// in all insns between a load insn and the insn that pops that value off
 		// the stack.
 
-		boolean updateLiveness = true;
+		this.solveLiveness();
+
+		int lastInsnIndex = this.insns.size() - 1;
+		LocalSets liveness = new LocalSets(1, this.method.maxLocals);
+
+		// For each store insn, make sure the corresponding local is live at
+		// least until the end of that block. This prevents cases where vars
+		// are never live.
+
+		LocalSets storedLocals = new LocalSets(1, this.method.maxLocals);
+
+		for (int insnIndex = 0; insnIndex <= lastInsnIndex; insnIndex++) {
+			// reset stored locals at the start of a new block
+			if (this.marker.entry[insnIndex]) {
+				storedLocals.clear(0);
+			}
+
+			// init liveness before execution of this insn
+			liveness.copy(0, this.livenesses, insnIndex);
+
+			// do not update locals that are already live!
+			storedLocals.andNot(0, liveness, 0);
+
+			// update liveness
+			liveness.or(0, storedLocals, 0);
+
+			this.saveLiveness(insnIndex, liveness);
+
+			// then process the insn and update stored locals
+			AbstractInsnNode insn = this.insns.get(insnIndex);
+
+			if (!ASM.isPseudoInsn(insn)) {
+				int opcode = insn.getOpcode();
+
+				if (opcode >= ISTORE && opcode <= ASTORE) {
+					VarInsnNode varInsn = (VarInsnNode) insn;
+					int varIndex = varInsn.var;
 
-		while (updateLiveness) {
-			updateLiveness = false;
+					storedLocals.set(0, varIndex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the liveness of each var index for each insn, by solving the
+	 * backward data flow over the basic blocks of the method. Each
+	 * block is summarized as {@code in = (out & pass) | gen}, and only blocks
+	 * whose successors changed are visited again. Since liveness only grows,
+	 * this finds the same fixpoint as repeated passes over all insns.
+	 */
+	void solveLiveness() {
+		LivenessBlocks blocks = this.marker.blocks;
+		int maxLocals = this.method.maxLocals;
 
-			int firstInsnIndex = 0;
-			int lastInsnIndex = this.insns.size() - 1;
+		LocalSets pass = new LocalSets(blocks.blockCount, maxLocals);
+		LocalSets gen = new LocalSets(blocks.blockCount, maxLocals);
+		LocalSets liveIn = new LocalSets(blocks.blockCount, maxLocals);
 
-			BitSet liveness = new BitSet(this.method.maxLocals);
+		LocalSets insnPass = new LocalSets(1, maxLocals);
+		LocalSets insnGen = new LocalSets(1, maxLocals);
 
-			for (int insnIndex = lastInsnIndex; insnIndex >= firstInsnIndex; insnIndex--) {
+		for (int block = 0; block < blocks.blockCount; block++) {
+			pass.setAll(block);
+
+			for (int insnIndex = blocks.blockEnds[block]; insnIndex >= blocks.blockStarts[block]; insnIndex--) {
 				StackFrame frame = this.frames[insnIndex];
 
 				if (frame == null) {
+					// the liveness of unreachable insns is never updated
+					pass.clear(block);
+					gen.clear(block);
+
 					continue;
 				}
 
-				// find liveness after execution of this insn
-				liveness.clear();
+				// the liveness of this insn is (after & insnPass) | insnGen
+				insnPass.clear(0);
+				this.markExistingLocals(frame, insnPass);
 
-				int[] dsts = this.marker.jumpTargets[insnIndex];
+				AbstractInsnNode insn = this.insns.get(insnIndex);
+				int opcode = insn.getOpcode();
 
-				if (dsts != null) {
-					for (int dst : dsts) {
-						liveness.or(this.livenesses[dst]);
-					}
-				} else if (insnIndex < lastInsnIndex) {
-					liveness.or(this.livenesses[insnIndex + 1]);
+				if (opcode >= ISTORE && opcode <= ASTORE) {
+					insnPass.clear(0, ((VarInsnNode) insn).var);
 				}
 
-				// then compute liveness before execution of this insn
-				AbstractInsnNode insn = this.insns.get(insnIndex);
+				insnGen.clear(0);
+				this.computeLivenessBefore(insnIndex, frame, insnGen);
+				insnGen.and(0, insnPass, 0);
 
-				// some insns pop values off the stack, and some of
-				// those values were pushed onto the stack from locals
-				int stackDemand = ASM.getStackDemand(insn);
+				pass.and(block, insnPass, 0);
+				gen.and(block, insnPass, 0);
+				gen.or(block, insnGen, 0);
+			}
+		}
 
-				for (int offset = 1; offset <= stackDemand; offset++) {
-					if (frame.peek(offset) == Type.VOID_TYPE) {
-						continue;
-					}
+		// process blocks in reverse order first, to save iterations
+		int[] blocksToProcess = new int[blocks.blockCount];
+		int blocksToProcessCount = 0;
+		BitSet inBlocksToProcess = new BitSet(blocks.blockCount);
+
+		for (int block = 0; block < blocks.blockCount; block++) {
+			blocksToProcess[blocksToProcessCount++] = block;
+			inBlocksToProcess.set(block);
+		}
+
+		LocalSets liveness = new LocalSets(1, maxLocals);
+
+		while (blocksToProcessCount > 0) {
+			int block = blocksToProcess[--blocksToProcessCount];
+			inBlocksToProcess.clear(block);
 
-					// TODO: handle situations where multiple different locals
-					//       could be loaded at this point, depending on which
-					//       execution path was taken
-					int varIndex = frame.peekLocal(offset);
+			this.findLivenessAfter(block, liveIn, liveness);
 
-					if (varIndex >= 0) {
-						// this local was pushed on to the stack but now popped off!
-						liveness.set(varIndex);
+			liveness.and(0, pass, block);
+			liveness.or(0, gen, block);
+
+			if (!liveness.equals(0, liveIn, block)) {
+				liveIn.or(block, liveness, 0);
+
+				for (int predecessor : blocks.predecessors[block]) {
+					if (!inBlocksToProcess.get(predecessor)) {
+						blocksToProcess[blocksToProcessCount++] = predecessor;
+						inBlocksToProcess.set(predecessor);
 					}
 				}
 
-				int opcode = insn.getOpcode();
+				// exits without jumps take the liveness of the next insn as well
+				int previous = block - 1;
 
-				if (opcode >= ILOAD && opcode <= ALOAD) {
-					// locals must be live when pushed onto the stack
-					liveness.set(((VarInsnNode) insn).var);
-
-					// do not consider top vars as live (thank you mc indev)
-//					if (opcode == LSTORE || opcode == DSTORE) {
-//						liveness |= (1 << ((VarInsnNode) insn).var + 1);
-//					}
-				} else if (opcode >= ISTORE && opcode <= ASTORE) {
-					// locals are not live before a store insn
-					liveness.clear(((VarInsnNode) insn).var);
-
-					// do not consider top vars as alive (thank you mc indev)
-//					if (opcode == LSTORE || opcode == DSTORE) {
-//						liveness.set(((VarInsnNode) insn).var + 1);
-//					}
+				if (previous >= 0 && this.marker.jumpTargets[blocks.blockEnds[previous]] == null && !inBlocksToProcess.get(previous)) {
+					blocksToProcess[blocksToProcessCount++] = previous;
+					inBlocksToProcess.set(previous);
 				}
-
-				updateLiveness |= this.saveLiveness(insnIndex, liveness);
 			}
 		}
 
-		// For each store insn, make sure the corresponding local is live at
-		// least until the end of that block. This prevents cases where vars
-		// are never live.
+		// then find the liveness of each insn within each block
+		for (int block = 0; block < blocks.blockCount; block++) {
+			this.findLivenessAfter(block, liveIn, liveness);
 
-		BitSet liveness = new BitSet(this.method.maxLocals);
-		BitSet storedLocals = new BitSet(this.method.maxLocals);
+			for (int insnIndex = blocks.blockEnds[block]; insnIndex >= blocks.blockStarts[block]; insnIndex--) {
+				StackFrame frame = this.frames[insnIndex];
 
-		int firstInsnIndex = 0;
-		int lastInsnIndex = this.insns.size() - 1;
+				if (frame == null) {
+					liveness.clear(0);
+					continue;
+				}
 
-		for (int insnIndex = firstInsnIndex; insnIndex <= lastInsnIndex; insnIndex++) {
-			// reset stored locals at the start of a new block
-			if (this.marker.entry[insnIndex]) {
-				storedLocals.clear();
-			}
+				this.computeLivenessBefore(insnIndex, frame, liveness);
 
-			// init liveness before execution of this insn
-			liveness.clear();
-			liveness.or(this.livenesses[insnIndex]);
+				insnPass.clear(0);
+				this.markExistingLocals(frame, insnPass);
+				liveness.and(0, insnPass, 0);
 
-			// do not update locals that are already live!
-			storedLocals.andNot(liveness);
+				this.livenesses.or(insnIndex, liveness, 0);
+			}
+		}
+	}
 
-			// update liveness
-			liveness.or(storedLocals);
+	/**
+	 * Find the liveness after execution of the last insn of the given block.
+	 */
+	private void findLivenessAfter(int block, LocalSets liveIn, LocalSets liveness) {
+		LivenessBlocks blocks = this.marker.blocks;
 
-			this.saveLiveness(insnIndex, liveness);
+		int insnIndex = blocks.blockEnds[block];
+		int[] dsts = this.marker.jumpTargets[insnIndex];
 
-			// then process the insn and update stored locals
-			AbstractInsnNode insn = this.insns.get(insnIndex);
+		liveness.clear(0);
 
-			if (!ASM.isPseudoInsn(insn)) {
-				int opcode = insn.getOpcode();
+		if (dsts != null) {
+			for (int dst : dsts) {
+				liveness.or(0, liveIn, blocks.insnBlocks[dst]);
+			}
+		} else if (block < blocks.blockCount - 1) {
+			// exits without jumps take the liveness of the next insn as well
+			liveness.or(0, liveIn, block + 1);
+		}
+	}
 
-				if (opcode >= ISTORE && opcode <= ASTORE) {
-					VarInsnNode varInsn = (VarInsnNode) insn;
-					int varIndex = varInsn.var;
+	/**
+	 * Mark the locals that exist in the given frame. Top vars are not
+	 * considered to exist (thank you mc indev).
+	 */
+	private void markExistingLocals(StackFrame frame, LocalSets locals) {
+		for (int varIndex = 0; varIndex < this.method.maxLocals; varIndex++) {
+			Type local = frame.getLocal(varIndex);
 
-					storedLocals.set(varIndex);
-				}
+			if (local != null && local != Type.VOID_TYPE) {
+				locals.set(0, varIndex);
 			}
 		}
 	}
 
-	private boolean saveLiveness(int insnIndex, BitSet liveness) {
-		BitSet oldLiveness = this.livenesses[insnIndex];
-		BitSet newLiveness = new BitSet(this.method.maxLocals);
+	/**
+	 * Compute the liveness before execution of the given insn from the
+	 * liveness after its execution.
+	 */
+	void computeLivenessBefore(int insnIndex, StackFrame frame, LocalSets liveness) {
+		AbstractInsnNode insn = this.insns.get(insnIndex);
+
+		// some insns pop values off the stack, and some of
+		// those values were pushed onto the stack from locals
+		int stackDemand = ASM.getStackDemand(insn);
+
+		for (int offset = 1; offset <= stackDemand; offset++) {
+			if (frame.peek(offset) == Type.VOID_TYPE) {
+				continue;
+			}
+
+			// TODO: handle situations where multiple different locals
+			//       could be loaded at this point, depending on which
+			//       execution path was taken
+			int varIndex = frame.peekLocal(offset);
 
-		newLiveness.or(liveness);
+			if (varIndex >= 0) {
+				// this local was pushed on to the stack but now popped off!
+				liveness.set(0, varIndex);
+			}
+		}
+
+		int opcode = insn.getOpcode();
+
+		if (opcode >= ILOAD && opcode <= ALOAD) {
+			// locals must be live when pushed onto the stack
+			liveness.set(0, ((VarInsnNode) insn).var);
+
+			// do not consider top vars as live (thank you mc indev)
+//			if (opcode == LSTORE || opcode == DSTORE) {
+//				liveness |= (1 << ((VarInsnNode) insn).var + 1);
+//			}
+		} else if (opcode >= ISTORE && opcode <= ASTORE) {
+			// locals are not live before a store insn
+			liveness.clear(0, ((VarInsnNode) insn).var);
+
+			// do not consider top vars as alive (thank you mc indev)
+//			if (opcode == LSTORE || opcode == DSTORE) {
+//				liveness.set(((VarInsnNode) insn).var + 1);
+//			}
+		}
+	}
 
+	private void saveLiveness(int insnIndex, LocalSets liveness) {
 		// mark any vars as dead if they do not exist
 		// in the frame for this insn
 		StackFrame frame = this.frames[insnIndex];
@@ -375,22 +488,13 @@ public class FrameBuilder implements Opcodes {
 
 				// do not consider top vars as alive (thank you mc indev)
 				if (local == null || local == Type.VOID_TYPE) {
-					newLiveness.clear(varIndex);
+					liveness.clear(0, varIndex);
 				}
 			}
 		}
 
-		// find whether the liveness changed
-		BitSet changedLiveness = new BitSet(this.method.maxLocals);
-
-		changedLiveness.or(newLiveness);
-		changedLiveness.andNot(oldLiveness);
-
 		// update liveness to new value
-		oldLiveness.or(changedLiveness);
-
-		// return whether the liveness changed
-		return !changedLiveness.isEmpty();
+		this.livenesses.or(insnIndex, liveness, 0);
 	}
 
 	/**
@@ -402,6 +506,11 @@ public class FrameBuilder implements Opcodes {
 	}
 
 	private void removeUnusedLocals() {
+		// locals supplied by the exit frame but not used by any jump target frame
+		LocalSets unusedLocals = new LocalSets(1, this.method.maxLocals);
+		// locals used by any of the jump target frames
+		LocalSets usedLocals = new LocalSets(1, this.method.maxLocals);
+
 		boolean removeLocals = true;
 
 		while (removeLocals) {
@@ -414,22 +523,16 @@ public class FrameBuilder implements Opcodes {
 					continue;
 				}
 
-				// locals used by the exit frame
-				BitSet suppliedLocals = new BitSet(this.method.maxLocals);
-				// locals used by any of the jump target frames
-				BitSet usedLocals = new BitSet(this.method.maxLocals);
+				unusedLocals.clear(0);
+				usedLocals.clear(0);
 
-				this.frames[exitInsnIndex].markLocals(suppliedLocals);
+				this.frames[exitInsnIndex].markLocals(unusedLocals, 0);
 
 				for (int dst : dsts) {
-					this.frames[dst].markLocals(usedLocals);
+					this.frames[dst].markLocals(usedLocals, 0);
 				}
 
-				// locals supplied by exit frame but not used by any jump target frame
-				BitSet unusedLocals = new BitSet(this.method.maxLocals);
-
-				unusedLocals.or(suppliedLocals);
-				unusedLocals.andNot(usedLocals);
+				unusedLocals.andNot(0, usedLocals, 0);
 
 				// iterate backwards over each insn in the exit block and remove
 				// any unused local from the stack frames until an insn that uses
@@ -443,15 +546,13 @@ public class FrameBuilder implements Opcodes {
 						break;
 					}
 
-					BitSet liveness = this.livenesses[insnIndex];
-
 					int unusedLocal = -1;
 					int localsRemoved = 0;
 
-					while ((unusedLocal = unusedLocals.nextSetBit(unusedLocal + 1)) != -1) {
-						if (liveness.get(unusedLocal)) {
+					while ((unusedLocal = unusedLocals.nextSetBit(0, unusedLocal + 1)) != -1) {
+						if (this.livenesses.get(insnIndex, unusedLocal)) {
 							// do not remove locals that are live this frame
-							unusedLocals.clear(unusedLocal);
+							unusedLocals.clear(0, unusedLocal);
 						} else {
 							StackFrame frame = this.frames[insnIndex];
 
@@ -15,10 +15,13 @@ import org.objectweb.asm.tree.TryCatchBlockNode;
 
 import net.ornithemc.condor.representation.ClassInstance;
 import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.TypeTable;
 import net.ornithemc.condor.util.ASM;
 
 public class InstructionMarker implements Opcodes {
 
+	private static final int[] NO_TRY_CATCH_BLOCKS = new int[0];
+
 	private Classpath classpath;
 	private MethodNode method;
 
@@ -54,6 +57,30 @@ public class InstructionMarker implements Opcodes {
 	 * for each try-catch block, gives the corresponding end insn
 	 */
 	int[] tryCatchBlockEnds;
+	/**
+	 * for each try-catch block, gives the corresponding handler insn
+	 */
+	int[] tryCatchBlockHandlers;
+	/**
+	 * for each try-catch block, gives the type of exception caught
+	 */
+	Type[] tryCatchBlockTypes;
+	/**
+	 * for each try-catch block, gives the class of exception caught,
+	 * resolved when first needed
+	 */
+	private ClassInstance[] tryCatchBlockClasses;
+	/**
+	 * for each insn, lists the try-catch blocks whose start and end insns
+	 * enclose it, in order; insns between the same boundaries share the
+	 * same array
+	 */
+	int[][] coveringTryCatchBlocks;
+
+	/**
+	 * the basic blocks of the method, found once all code jumps are known
+	 */
+	final LivenessBlocks blocks = new LivenessBlocks();
 
 	public void init(Classpath classpath, ClassNode cls, MethodNode method) {
 		this.classpath = classpath;
@@ -73,6 +100,10 @@ public class InstructionMarker implements Opcodes {
 
 		this.tryCatchBlockStarts = new int[this.method.tryCatchBlocks.size()];
 		this.tryCatchBlockEnds = new int[this.method.tryCatchBlocks.size()];
+		this.tryCatchBlockHandlers = new int[this.method.tryCatchBlocks.size()];
+		this.tryCatchBlockTypes = new Type[this.method.tryCatchBlocks.size()];
+		this.tryCatchBlockClasses = new ClassInstance[this.method.tryCatchBlocks.size()];
+		this.coveringTryCatchBlocks = new int[this.insns.size()][];
 
 		Arrays.fill(this.exceptionHandlers, -1);
 
@@ -81,17 +112,57 @@ public class InstructionMarker implements Opcodes {
 	}
 
 	/**
-	 * Mark the start and end insns of each try-catch block.
+	 * Mark the start, end, and handler insns of each try-catch block, and
+	 * find the try-catch blocks that cover each insn.
 	 */
 	public void markTryCatchBlocks() {
+		TypeTable types = this.classpath.getTypeTable();
+
 		for (int i = 0; i < this.method.tryCatchBlocks.size(); i++) {
 			TryCatchBlockNode tryCatchBlock = this.method.tryCatchBlocks.get(i);
 
 			this.tryCatchBlockStarts[i] = this.insns.indexOf(tryCatchBlock.start);
 			this.tryCatchBlockEnds[i] = this.insns.indexOf(tryCatchBlock.end);
+			this.tryCatchBlockHandlers[i] = this.insns.indexOf(tryCatchBlock.handler);
+			this.tryCatchBlockTypes[i] = (tryCatchBlock.type == null)
+				? ASM.THROWABLE_TYPE
+				: types.getObjectType(tryCatchBlock.type);
+
+			this.entry[this.tryCatchBlockHandlers[i]] = true;
+		}
+
+		// the covering try-catch blocks only change at the start of a
+		// try-catch block and after its end, so sweep over the insns and
+		// only find them again at those boundaries
+		boolean[] boundaries = new boolean[this.insns.size() + 1];
+
+		for (int i = 0; i < this.method.tryCatchBlocks.size(); i++) {
+			boundaries[this.tryCatchBlockStarts[i]] = true;
+			boundaries[this.tryCatchBlockEnds[i] + 1] = true;
+		}
+
+		int[] tryCatchBlocks = NO_TRY_CATCH_BLOCKS;
 
-			this.entry[this.insns.indexOf(tryCatchBlock.handler)] = true;
+		for (int insnIndex = 0; insnIndex < this.insns.size(); insnIndex++) {
+			if (boundaries[insnIndex]) {
+				tryCatchBlocks = this.findCoveringTryCatchBlocks(insnIndex);
+			}
+
+			this.coveringTryCatchBlocks[insnIndex] = tryCatchBlocks;
+		}
+	}
+
+	private int[] findCoveringTryCatchBlocks(int insnIndex) {
+		int[] tryCatchBlocks = new int[this.method.tryCatchBlocks.size()];
+		int tryCatchBlockCount = 0;
+
+		for (int i = 0; i < this.method.tryCatchBlocks.size(); i++) {
+			if (insnIndex >= this.tryCatchBlockStarts[i] && insnIndex <= this.tryCatchBlockEnds[i]) {
+				tryCatchBlocks[tryCatchBlockCount++] = i;
+			}
 		}
+
+		return (tryCatchBlockCount == 0) ? NO_TRY_CATCH_BLOCKS : Arrays.copyOf(tryCatchBlocks, tryCatchBlockCount);
 	}
 
 	/**
@@ -151,29 +222,32 @@ public class InstructionMarker implements Opcodes {
 		if (opcode == ATHROW) {
 			boolean foundHandler = false;
 
-			if (!this.method.tryCatchBlocks.isEmpty()) {
+			int[] tryCatchBlocks = this.coveringTryCatchBlocks[insnIndex];
+
+			if (tryCatchBlocks.length > 0) {
 				Type exceptionType = frame.peek();
 				ClassInstance exceptionCls = this.classpath.getClass(exceptionType);
 
 				// find exception handler for this exception, record jump
-				for (TryCatchBlockNode tryCatchBlock : this.method.tryCatchBlocks) {
-					int startInsnIndex = this.insns.indexOf(tryCatchBlock.start);
-					int endInsnIndex = this.insns.indexOf(tryCatchBlock.end);
+				for (int i : tryCatchBlocks) {
+					// the end insn itself is not covered here
+					if (this.tryCatchBlockEnds[i] == insnIndex) {
+						continue;
+					}
 
-					if (startInsnIndex <= insnIndex && endInsnIndex > insnIndex) {
-						Type handlerType = (tryCatchBlock.type == null)
-							? ASM.THROWABLE_TYPE
-							: Type.getObjectType(tryCatchBlock.type);
-						ClassInstance handlerCls = this.classpath.getClass(handlerType);
+					ClassInstance handlerCls = this.tryCatchBlockClasses[i];
 
-						if (exceptionCls.hasSuperClass(this.classpath, handlerCls)) {
-							int handlerIndex = this.insns.indexOf(tryCatchBlock.handler);
+					if (handlerCls == null) {
+						handlerCls = this.tryCatchBlockClasses[i] = this.classpath.getClass(this.tryCatchBlockTypes[i]);
+					}
 
-							this.jump(insnIndex, handlerIndex);
-							this.exceptionHandlers[insnIndex] = handlerIndex;
+					if (exceptionCls.hasSuperClass(this.classpath, handlerCls)) {
+						int handlerIndex = this.tryCatchBlockHandlers[i];
 
-							foundHandler = true;
-						}
+						this.jump(insnIndex, handlerIndex);
+						this.exceptionHandlers[insnIndex] = handlerIndex;
+
+						foundHandler = true;
 					}
 				}
 			}
@@ -189,8 +263,8 @@ public class InstructionMarker implements Opcodes {
 	 * Identify code jumps to exception handlers inside try-catch blocks.
 	 */
 	public void processTryCatchBlocks() {
-		for (TryCatchBlockNode tryCatchBlock : this.method.tryCatchBlocks) {
-			int handlerInsnIndex = this.insns.indexOf(tryCatchBlock.handler);
+		for (int i = 0; i < this.method.tryCatchBlocks.size(); i++) {
+			int handlerInsnIndex = this.tryCatchBlockHandlers[i];
 
 			// figuring out which insns could lead to an exception that's
 			// caught by the handler is hard, so instead treat every insn
@@ -199,8 +273,8 @@ public class InstructionMarker implements Opcodes {
 			// exits/jumps from throw and return insns were already handled
 			// by the processInsns step
 
-			int startInsnIndex = this.insns.indexOf(tryCatchBlock.start);
-			int endInsnIndex = this.insns.indexOf(tryCatchBlock.end);
+			int startInsnIndex = this.tryCatchBlockStarts[i];
+			int endInsnIndex = this.tryCatchBlockEnds[i];
 
 			boolean firstInsn = true;
 			boolean prevInsnIsStore = false;
@@ -278,6 +352,14 @@ public class InstructionMarker implements Opcodes {
 		}
 	}
 
+	/**
+	 * Find the basic blocks the liveness of locals is solved over, from the
+	 * finalized entries, exits and code jumps.
+	 */
+	public void findLivenessBlocks() {
+		this.blocks.build(this, this.method);
+	}
+
 	/**
 	 *  Record a jump from the given src insn to the given dst insns.
 	 */
@@ -0,0 +1,144 @@
+package net.ornithemc.condor.lvt;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A summary of the basic blocks of a method, as used to solve the liveness of
+ * locals in the {@link FrameBuilder}. This is not a full control flow graph:
+ * it only has the edges liveness flows back over, which are the code jumps
+ * found by the {@link InstructionMarker} and the fall through into the next
+ * block. Exceptions only flow to their handlers where the marker recorded a
+ * code jump for them. Stack frames are computed per insn and do not use
+ * these blocks.
+ *
+ * <p>
+ * A block starts at the first insn, at each entry point, and after each insn
+ * that jumps or exits. Blocks are numbered in insn order, so each block
+ * directly follows the block before it.
+ */
+class LivenessBlocks {
+
+	private static final int[] NO_BLOCKS = new int[0];
+
+	/**
+	 * the number of blocks
+	 */
+	int blockCount;
+
+	/**
+	 * for each block, gives its first insn
+	 */
+	int[] blockStarts;
+	/**
+	 * for each block, gives its last insn
+	 */
+	int[] blockEnds;
+	/**
+	 * for each insn, gives the block it belongs to
+	 */
+	int[] insnBlocks;
+
+	/**
+	 * for each block, lists the blocks that jump or fall through into it,
+	 * whose liveness must be found again once its liveness changes
+	 * exits without code jumps take the liveness of the next block as well,
+	 * but are not listed, see {@link FrameBuilder#solveLiveness}
+	 */
+	int[][] predecessors;
+
+	/**
+	 * Find the blocks from the finalized entries, exits and code jumps.
+	 */
+	void build(InstructionMarker marker, MethodNode method) {
+		InsnList insns = method.instructions;
+		int insnCount = insns.size();
+
+		// find the blocks
+		this.blockStarts = new int[insnCount];
+		this.blockEnds = new int[insnCount];
+		this.insnBlocks = new int[insnCount];
+		this.blockCount = 0;
+
+		if (insnCount == 0) {
+			this.predecessors = new int[0][];
+			return;
+		}
+
+		for (int insnIndex = 0; insnIndex < insnCount; insnIndex++) {
+			boolean start = (insnIndex == 0)
+				|| marker.entry[insnIndex]
+				|| marker.exit[insnIndex - 1]
+				|| marker.jumpTargets[insnIndex - 1] != null;
+
+			if (start) {
+				if (this.blockCount > 0) {
+					this.blockEnds[this.blockCount - 1] = insnIndex - 1;
+				}
+
+				this.blockStarts[this.blockCount++] = insnIndex;
+			}
+
+			this.insnBlocks[insnIndex] = this.blockCount - 1;
+		}
+
+		this.blockEnds[this.blockCount - 1] = insnCount - 1;
+
+		this.blockStarts = Arrays.copyOf(this.blockStarts, this.blockCount);
+		this.blockEnds = Arrays.copyOf(this.blockEnds, this.blockCount);
+
+		// find the edges between blocks, first counting the predecessors
+		// of each block, then filling them in
+		this.predecessors = new int[this.blockCount][];
+
+		int[] predecessorCounts = new int[this.blockCount];
+		// for each block, the last block found to flow into it, since
+		// switch insns can jump to the same block more than once
+		int[] lastPredecessors = new int[this.blockCount];
+
+		Arrays.fill(lastPredecessors, -1);
+
+		for (int block = 0; block < this.blockCount; block++) {
+			this.findSuccessors(marker, block, predecessorCounts, lastPredecessors, null);
+		}
+
+		for (int block = 0; block < this.blockCount; block++) {
+			this.predecessors[block] = (predecessorCounts[block] == 0) ? NO_BLOCKS : new int[predecessorCounts[block]];
+			predecessorCounts[block] = 0;
+		}
+
+		Arrays.fill(lastPredecessors, -1);
+
+		for (int block = 0; block < this.blockCount; block++) {
+			this.findSuccessors(marker, block, predecessorCounts, lastPredecessors, this.predecessors);
+		}
+	}
+
+	private void findSuccessors(InstructionMarker marker, int block, int[] predecessorCounts, int[] lastPredecessors, int[][] predecessors) {
+		int end = this.blockEnds[block];
+		int[] dsts = marker.jumpTargets[end];
+
+		if (dsts != null) {
+			for (int dst : dsts) {
+				this.addEdge(block, this.insnBlocks[dst], predecessorCounts, lastPredecessors, predecessors);
+			}
+		} else if (!marker.exit[end] && block < this.blockCount - 1) {
+			// no jumps, execution continues in the next block
+			this.addEdge(block, block + 1, predecessorCounts, lastPredecessors, predecessors);
+		}
+	}
+
+	private void addEdge(int block, int successor, int[] predecessorCounts, int[] lastPredecessors, int[][] predecessors) {
+		if (lastPredecessors[successor] != block) {
+			lastPredecessors[successor] = block;
+
+			if (predecessors != null) {
+				predecessors[successor][predecessorCounts[successor]] = block;
+			}
+
+			predecessorCounts[successor]++;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package net.ornithemc.condor.lvt;
+
+/**
+ * A set of var indices for each index, such as for each insn or each block,
+ * stored as words of bits in a single array. Nearly all methods have at most
+ * 64 locals, in which case each set is a single word, and merging and
+ * comparing sets are single operations. Methods with more locals use several
+ * words for each set.
+ */
+class LocalSets {
+
+	private static final int WORD_SHIFT = 6;
+
+	/**
+	 * the number of words in each set
+	 */
+	private final int words;
+	/**
+	 * the words of all sets, one set after the other
+	 */
+	private final long[] bits;
+
+	LocalSets(int size, int maxLocals) {
+		this.words = Math.max(1, (maxLocals + Long.SIZE - 1) >>> WORD_SHIFT);
+		this.bits = new long[size * this.words];
+	}
+
+	boolean get(int index, int varIndex) {
+		return (this.bits[index * this.words + (varIndex >>> WORD_SHIFT)] & (1L << varIndex)) != 0;
+	}
+
+	void set(int index, int varIndex) {
+		this.bits[index * this.words + (varIndex >>> WORD_SHIFT)] |= (1L << varIndex);
+	}
+
+	void clear(int index, int varIndex) {
+		this.bits[index * this.words + (varIndex >>> WORD_SHIFT)] &= ~(1L << varIndex);
+	}
+
+	/**
+	 * Add all var indices to the set at the given index, including those
+	 * beyond the max locals of the method.
+	 */
+	void setAll(int index) {
+		for (int i = index * this.words, end = i + this.words; i < end; i++) {
+			this.bits[i] = -1L;
+		}
+	}
+
+	void clear(int index) {
+		for (int i = index * this.words, end = i + this.words; i < end; i++) {
+			this.bits[i] = 0L;
+		}
+	}
+
+	boolean isEmpty(int index) {
+		for (int i = index * this.words, end = i + this.words; i < end; i++) {
+			if (this.bits[i] != 0L) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the first var index in the set at the given index that is equal
+	 *         to or greater than the given var index, or -1 if there is none
+	 */
+	int nextSetBit(int index, int fromVarIndex) {
+		int word = fromVarIndex >>> WORD_SHIFT;
+
+		if (word >= this.words) {
+			return -1;
+		}
+
+		int offset = index * this.words;
+		long bits = this.bits[offset + word] & (-1L << fromVarIndex);
+
+		while (bits == 0L) {
+			if (++word == this.words) {
+				return -1;
+			}
+
+			bits = this.bits[offset + word];
+		}
+
+		return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+	}
+
+	void copy(int index, LocalSets other, int otherIndex) {
+		System.arraycopy(other.bits, otherIndex * other.words, this.bits, index * this.words, this.words);
+	}
+
+	void or(int index, LocalSets other, int otherIndex) {
+		for (int i = index * this.words, j = otherIndex * other.words, end = i + this.words; i < end; i++, j++) {
+			this.bits[i] |= other.bits[j];
+		}
+	}
+
+	void and(int index, LocalSets other, int otherIndex) {
+		for (int i = index * this.words, j = otherIndex * other.words, end = i + this.words; i < end; i++, j++) {
+			this.bits[i] &= other.bits[j];
+		}
+	}
+
+	void andNot(int index, LocalSets other, int otherIndex) {
+		for (int i = index * this.words, j = otherIndex * other.words, end = i + this.words; i < end; i++, j++) {
+			this.bits[i] &= ~other.bits[j];
+		}
+	}
+
+	boolean equals(int index, LocalSets other, int otherIndex) {
+		for (int i = index * this.words, j = otherIndex * other.words, end = i + this.words; i < end; i++, j++) {
+			if (this.bits[i] != other.bits[j]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -71,7 +71,7 @@ public class LocalVariableBuilder {
 
 			for (; !exit; insnIndex++) {
 				AbstractInsnNode insn = this.insns.get(insnIndex);
-				StackFrame frame = this.frames.frames[insnIndex];
+				StackFrame frame = this.frames.getFrame(insnIndex);
 
 				for (int varIndex = 0; varIndex < this.method.maxLocals; varIndex++) {
 					Type type = frame.getLocal(varIndex);
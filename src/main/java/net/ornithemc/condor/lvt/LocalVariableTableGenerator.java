@@ -7,10 +7,29 @@ import net.ornithemc.condor.representation.Classpath;
 
 public class LocalVariableTableGenerator {
 
-	private final InstructionMarker marker = new InstructionMarker();
-	private final FrameBuilder frames = new FrameBuilder(this.marker);
-	private final LocalVariableTweaker tweaker = new LocalVariableTweaker(this.marker, this.frames);
-	private final LocalVariableBuilder builder = new LocalVariableBuilder(this.marker, this.frames);
+	private final InstructionMarker marker;
+	private final FrameBuilder frames;
+	private final LocalVariableTweaker tweaker;
+	private final LocalVariableBuilder builder;
+
+	public LocalVariableTableGenerator() {
+		this(new InstructionMarker());
+	}
+
+	private LocalVariableTableGenerator(InstructionMarker marker) {
+		this(marker, new FrameBuilder(marker));
+	}
+
+	/**
+	 * Create a generator that computes stack frames and liveness with the
+	 * given frame builder, which must use the given marker.
+	 */
+	LocalVariableTableGenerator(InstructionMarker marker, FrameBuilder frames) {
+		this.marker = marker;
+		this.frames = frames;
+		this.tweaker = new LocalVariableTweaker(this.marker, this.frames);
+		this.builder = new LocalVariableBuilder(this.marker, this.frames);
+	}
 
 	public void init(Classpath classpath, ClassNode cls, MethodNode method) {
 		this.marker.init(classpath, cls, method);
@@ -33,6 +52,7 @@ public class LocalVariableTableGenerator {
 		// finalize entries, exits, code jumps
 		this.marker.processTryCatchBlocks();
 		this.marker.processEntryPoints();
+		this.marker.findLivenessBlocks();
 		// compute var liveness
 		this.frames.computeLiveness();
 		// clean up stack frames
@@ -1,15 +1,74 @@
 package net.ornithemc.condor.lvt;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import net.ornithemc.condor.util.ASM;
+
 public class LocalVariableTables {
 
+	/**
+	 * Scan the given class file for methods that need work, without building
+	 * the full class tree. Only the access flags, max locals and lvt entries
+	 * of each method are read.
+	 *
+	 * @param obfuscateNames whether existing lvt entries are renamed as well
+	 * @return whether any method has an incomplete lvt, or, if names are to be
+	 *         obfuscated, whether any method has an lvt at all
+	 */
+	public static boolean needsProcessing(ClassReader reader, boolean obfuscateNames) {
+		boolean[] needsProcessing = new boolean[1];
+
+		reader.accept(new ClassVisitor(ASM.API_VERSION) {
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				// once any method needs work, the rest can be skipped
+				if (needsProcessing[0]) {
+					return null;
+				}
+
+				MethodNode method = new MethodNode(ASM.API_VERSION, access, name, descriptor, null, null);
+
+				return new MethodVisitor(ASM.API_VERSION) {
+
+					@Override
+					public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+						if (method.localVariables == null) {
+							method.localVariables = new ArrayList<>();
+						}
+
+						method.localVariables.add(new LocalVariableNode(name, descriptor, null, null, null, index));
+					}
+
+					@Override
+					public void visitMaxs(int maxStack, int maxLocals) {
+						method.maxLocals = maxLocals;
+					}
+
+					@Override
+					public void visitEnd() {
+						if (!isComplete(method) || (obfuscateNames && method.localVariables != null)) {
+							needsProcessing[0] = true;
+						}
+					}
+				};
+			}
+		}, ClassReader.SKIP_FRAMES);
+
+		return needsProcessing[0];
+	}
+
 	public static boolean isComplete(MethodNode method) {
 		// abstract methods have no method body, so no lvt
 		if ((method.access & Opcodes.ACC_ABSTRACT) != 0) {
@@ -51,16 +110,29 @@ public class LocalVariableTables {
 
 		for (LocalVariableNode localVariable : method.localVariables) {
 			int varIndex = localVariable.index;
-			Type type = Type.getType(localVariable.desc);
+			int size = getSize(localVariable.desc);
 
-			if (maxLocals < varIndex + type.getSize()) {
-				maxLocals = varIndex + type.getSize();
+			if (maxLocals < varIndex + size) {
+				maxLocals = varIndex + size;
 			}
 		}
 
 		return maxLocals == method.maxLocals;
 	}
 
+	private static int getSize(String desc) {
+		// the size follows from the first char, no need to parse the whole descriptor
+		switch (desc.charAt(0)) {
+		case 'J':
+		case 'D':
+			return 2;
+		case 'V':
+			return 0;
+		default:
+			return 1;
+		}
+	}
+
 	public static void removeInvalidEntries(ClassNode cls, MethodNode method) {
 		if (method.localVariables == null || method.localVariables.isEmpty()) {
 			return;
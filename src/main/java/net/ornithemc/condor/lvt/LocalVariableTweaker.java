@@ -17,6 +17,7 @@ import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
 import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.TypeTable;
 import net.ornithemc.condor.util.ASM;
 
 public class LocalVariableTweaker implements Opcodes {
@@ -25,6 +26,7 @@ public class LocalVariableTweaker implements Opcodes {
 	private final FrameBuilder frames;
 
 	private Classpath classpath;
+	private TypeTable types;
 	private MethodNode method;
 
 	private Type[] params;
@@ -32,9 +34,9 @@ public class LocalVariableTweaker implements Opcodes {
 	private InsnList insns;
 
 	/**
-	 * for each var index, whether it has been processed at each insn
+	 * for each insn, the var indices that have been processed at that insn
 	 */
-	BitSet[] processed;
+	LocalSets processed;
 
 	public LocalVariableTweaker(InstructionMarker marker, FrameBuilder frames) {
 		this.marker = marker;
@@ -45,17 +47,13 @@ public class LocalVariableTweaker implements Opcodes {
 		this.classpath = classpath;
 		this.method = method;
 
-		Type desc = Type.getMethodType(this.method.desc);
+		this.types = classpath.getTypeTable();
 
-		this.params = desc.getArgumentTypes();
-		this.ret = desc.getReturnType();
+		this.params = this.types.getArgumentTypes(this.method.desc);
+		this.ret = this.types.getReturnType(this.method.desc);
 		this.insns = this.method.instructions;
 
-		this.processed = new BitSet[this.method.maxLocals];
-
-		for (int i = 0; i < this.method.maxLocals; i++) {
-			this.processed[i] = new BitSet(this.insns.size());
-		}
+		this.processed = new LocalSets(this.insns.size(), this.method.maxLocals);
 	}
 
 	/**
@@ -68,7 +66,7 @@ public class LocalVariableTweaker implements Opcodes {
 		// a certain type, like field, method, and return insns
 		for (int insnIndex = 0; insnIndex < this.insns.size(); insnIndex++) {
 			AbstractInsnNode insn = this.insns.get(insnIndex);
-			StackFrame frame = this.frames.frames[insnIndex];
+			StackFrame frame = this.frames.getFrame(insnIndex);
 
 			if (!ASM.isPseudoInsn(insn)) {
 				int opcode = insn.getOpcode();
@@ -86,7 +84,7 @@ public class LocalVariableTweaker implements Opcodes {
 						Type arrayType = frame.peek2();
 
 						Type value = (opcode == AALOAD)
-							? Type.getType(arrayType.getDescriptor().substring(1))
+							? this.types.getComponentType(arrayType)
 							: arrayType.getElementType();
 
 						this.processLocalsAfterInsn(insnIndex, value);
@@ -109,7 +107,7 @@ public class LocalVariableTweaker implements Opcodes {
 						Type arrayType = frame.peek(offset);
 
 						Type value = (opcode == AASTORE)
-							? Type.getType(arrayType.getDescriptor().substring(1))
+							? this.types.getComponentType(arrayType)
 							: arrayType.getElementType();
 
 						this.processLocalsBeforeInsn(insnIndex, 0, value);
@@ -153,11 +151,11 @@ public class LocalVariableTweaker implements Opcodes {
 				case GETSTATIC:
 					{
 						FieldInsnNode fieldInsn = (FieldInsnNode) insn;
-						Type fieldType = Type.getType(fieldInsn.desc);
+						Type fieldType = this.types.getType(fieldInsn.desc);
 
 						if (opcode == GETSTATIC) {
 							String owner = ((FieldInsnNode) insn).owner;
-							Type ownerType = Type.getObjectType(owner);
+							Type ownerType = this.types.getObjectType(owner);
 
 							this.processLocalsBeforeInsn(insnIndex, 0, ownerType);
 						}
@@ -170,13 +168,13 @@ public class LocalVariableTweaker implements Opcodes {
 				case PUTSTATIC:
 					{
 						FieldInsnNode fieldInsn = (FieldInsnNode) insn;
-						Type fieldType = Type.getType(fieldInsn.desc);
+						Type fieldType = this.types.getType(fieldInsn.desc);
 
 						this.processLocalsBeforeInsn(insnIndex, 0, fieldType);
 
 						if (opcode != PUTSTATIC) {
 							String owner = ((FieldInsnNode) insn).owner;
-							Type ownerType = Type.getObjectType(owner);
+							Type ownerType = this.types.getObjectType(owner);
 
 							this.processLocalsBeforeInsn(insnIndex, fieldType.getSize(), ownerType);
 						}
@@ -192,9 +190,8 @@ public class LocalVariableTweaker implements Opcodes {
 						String desc = (opcode == INVOKEDYNAMIC)
 							? ((InvokeDynamicInsnNode) insn).desc
 							: ((MethodInsnNode) insn).desc;
-						Type type = Type.getMethodType(desc);
-						Type[] args = type.getArgumentTypes();
-						Type ret = type.getReturnType();
+						Type[] args = this.types.getArgumentTypes(desc);
+						Type ret = this.types.getReturnType(desc);
 
 						int offset = 0;
 
@@ -208,7 +205,7 @@ public class LocalVariableTweaker implements Opcodes {
 
 						if (opcode != INVOKESTATIC && opcode != INVOKEDYNAMIC) {
 							String owner = ((MethodInsnNode) insn).owner;
-							Type ownerType = Type.getObjectType(owner);
+							Type ownerType = this.types.getObjectType(owner);
 
 							this.processLocalsBeforeInsn(insnIndex, offset, ownerType);
 						}
@@ -237,7 +234,7 @@ public class LocalVariableTweaker implements Opcodes {
 		// can have, like constants, and arithmetic and logic ops
 		for (int insnIndex = 0; insnIndex < this.insns.size(); insnIndex++) {
 			AbstractInsnNode insn = this.insns.get(insnIndex);
-			StackFrame frame = this.frames.frames[insnIndex];
+			StackFrame frame = this.frames.getFrame(insnIndex);
 
 			if (!ASM.isPseudoInsn(insn)) {
 				int opcode = insn.getOpcode();
@@ -362,7 +359,7 @@ public class LocalVariableTweaker implements Opcodes {
 		// another type, like equality checks and comparisons
 		for (int insnIndex = 0; insnIndex < this.insns.size(); insnIndex++) {
 			AbstractInsnNode insn = this.insns.get(insnIndex);
-			StackFrame frame = this.frames.frames[insnIndex];
+			StackFrame frame = this.frames.getFrame(insnIndex);
 
 			if (!ASM.isPseudoInsn(insn)) {
 				int opcode = insn.getOpcode();
@@ -430,7 +427,7 @@ public class LocalVariableTweaker implements Opcodes {
 	 * loaded from locals and whether the type(s) of those locals should be tweaked.
 	 */
 	private Type processLocalsBeforeInsn(int insnIndex, int stackOffset, Type expectedType) {
-		StackFrame frame = this.frames.frames[insnIndex];
+		StackFrame frame = this.frames.getFrame(insnIndex);
 		int expectedStackSize = frame.getStackSize() - stackOffset;
 
 		if (expectedStackSize < expectedType.getSize()) {
@@ -460,7 +457,7 @@ public class LocalVariableTweaker implements Opcodes {
 	}
 
 	private void resetLocalsBeforeInsn(int insnIndex, int stackOffset, Type originalType, Type tweakedType) {
-		StackFrame frame = this.frames.frames[insnIndex];
+		StackFrame frame = this.frames.getFrame(insnIndex);
 		int expectedStackSize = frame.getStackSize() - stackOffset;
 
 		if (expectedStackSize < tweakedType.getSize()) {
@@ -489,7 +486,7 @@ public class LocalVariableTweaker implements Opcodes {
 
 		while ((storeInsnIndex = storeInsns.nextSetBit(storeInsnIndex + 1)) != -1) {
 			VarInsnNode storeInsn = (VarInsnNode) this.insns.get(storeInsnIndex);
-			StackFrame nextFrame = this.frames.frames[storeInsnIndex + 1];
+			StackFrame nextFrame = this.frames.getFrame(storeInsnIndex + 1);
 
 			int storedVarIndex = storeInsn.var;
 			Type storedLocalType = nextFrame.getLocal(storedVarIndex);
@@ -517,7 +514,7 @@ public class LocalVariableTweaker implements Opcodes {
 				AbstractInsnNode insn = this.insns.get(insnIndex);
 				int opcode = insn.getOpcode();
 
-				StackFrame frame = this.frames.frames[insnIndex];
+				StackFrame frame = this.frames.getFrame(insnIndex);
 				int stackSize = frame.getStackSize();
 
 				if (stackSize == expectedStackSize - expectedType.getSize()) {
@@ -580,7 +577,7 @@ public class LocalVariableTweaker implements Opcodes {
 					// found a store insn, now check that the local type
 					// matches the one that needs tweaking
 					// the local is not in the frame until the next insn!
-					StackFrame frame = this.frames.frames[insnIndex + 1];
+					StackFrame frame = this.frames.getFrame(insnIndex + 1);
 					Type localType = frame.getLocal(varIndex);
 
 					// a store insn may be followed by a label where the local
@@ -645,7 +642,7 @@ public class LocalVariableTweaker implements Opcodes {
 							int varIndex = ((VarInsnNode) insn).var;
 
 							// the local is not in the frame until the next insn!
-							StackFrame frame = this.frames.frames[insnIndex + 1];
+							StackFrame frame = this.frames.getFrame(insnIndex + 1);
 							Type localType = frame.getLocal(varIndex);
 
 							if (localType != null) {
@@ -690,20 +687,19 @@ public class LocalVariableTweaker implements Opcodes {
 
 				if (insn.getOpcode() == ISTORE) {
 					int varIndex = ((VarInsnNode) insn).var;
-					BitSet processed = this.processed[varIndex];
 
 					// if this varIndex at this insn has already been processed, it
 					// either already is a boolean, or its type has been restricted
 					// to another int related type
-					if (!processed.get(insnIndex + 1)) {
-						StackFrame nextFrame = this.frames.frames[insnIndex + 1];
+					if (!this.processed.get(insnIndex + 1, varIndex)) {
+						StackFrame nextFrame = this.frames.getFrame(insnIndex + 1);
 						Type localType = nextFrame.getLocal(varIndex);
 
 						if (localType != null && localType != Type.BOOLEAN_TYPE) {
 							if (this.checkBooleanExpression(insnIndex)) {
 								this.tweakLocals(insnIndex + 1, varIndex, localType, Type.BOOLEAN_TYPE);
 
-								if (processed.get(insnIndex + 1)) {
+								if (this.processed.get(insnIndex + 1, varIndex)) {
 									processLocals = true;
 								}
 							}
@@ -740,7 +736,7 @@ public class LocalVariableTweaker implements Opcodes {
 						break; // valid in boolean expressions, check preceding insns
 					case ILOAD:
 						{
-							StackFrame frame = this.frames.frames[insnIndex];
+							StackFrame frame = this.frames.getFrame(insnIndex);
 							int varIndex = ((VarInsnNode) insn).var;
 
 							return frame.getLocal(varIndex) == Type.BOOLEAN_TYPE;
@@ -749,7 +745,7 @@ public class LocalVariableTweaker implements Opcodes {
 					case GETSTATIC:
 						{
 							FieldInsnNode fieldInsn = (FieldInsnNode) insn;
-							Type fieldType = Type.getType(fieldInsn.desc);
+							Type fieldType = this.types.getType(fieldInsn.desc);
 
 							return fieldType == Type.BOOLEAN_TYPE;
 						}
@@ -762,8 +758,7 @@ public class LocalVariableTweaker implements Opcodes {
 							String desc = (opcode == INVOKEDYNAMIC)
 								? ((InvokeDynamicInsnNode) insn).desc
 								: ((MethodInsnNode) insn).desc;
-							Type type = Type.getMethodType(desc);
-							Type ret = type.getReturnType();
+							Type ret = this.types.getReturnType(desc);
 
 							return ret == Type.BOOLEAN_TYPE;
 						}
@@ -807,8 +802,6 @@ public class LocalVariableTweaker implements Opcodes {
 	private Type tweakLocals(BitSet storeInsns, int varIndex, Type expectedType) {
 		// check that none of these insns were processed before
 		// otherwise take the previously processed type into account
-		BitSet processed = this.processed[varIndex];
-
 		// collect unique local types
 		Set<Type> localTypes = new HashSet<>();
 
@@ -816,13 +809,13 @@ public class LocalVariableTweaker implements Opcodes {
 
 		while ((storeInsnIndex = storeInsns.nextSetBit(storeInsnIndex + 1)) != -1) {
 			VarInsnNode storeInsn = (VarInsnNode) this.insns.get(storeInsnIndex);
-			StackFrame nextFrame = this.frames.frames[storeInsnIndex + 1];
+			StackFrame nextFrame = this.frames.getFrame(storeInsnIndex + 1);
 
 			int storedVarIndex = storeInsn.var;
 			Type storedLocalType = nextFrame.getLocal(storedVarIndex);
 
 			if (storedLocalType != ASM.NULL_TYPE) {
-				if (processed.get(storeInsnIndex + 1)) {
+				if (this.processed.get(storeInsnIndex + 1, varIndex)) {
 					expectedType = this.classpath.getCommonSuperType(expectedType, storedLocalType);
 				}
 
@@ -851,7 +844,7 @@ public class LocalVariableTweaker implements Opcodes {
 
 		while ((storeInsnIndex = storeInsns.nextSetBit(storeInsnIndex + 1)) != -1) {
 			VarInsnNode storeInsn = (VarInsnNode) this.insns.get(storeInsnIndex);
-			StackFrame nextFrame = this.frames.frames[storeInsnIndex + 1];
+			StackFrame nextFrame = this.frames.getFrame(storeInsnIndex + 1);
 
 			int storedVarIndex = storeInsn.var;
 			Type storedLocalType = nextFrame.getLocal(storedVarIndex);
@@ -867,10 +860,8 @@ public class LocalVariableTweaker implements Opcodes {
 
 	// TODO: tweak stack too?
 	private Type tweakLocals(int startInsn, int varIndex, Type expectedLocalType, Type tweakedType) {
-		BitSet processed = this.processed[varIndex];
-
 		for (int insnIndex = startInsn; insnIndex < this.insns.size(); insnIndex++) {
-			StackFrame frame = this.frames.frames[insnIndex];
+			StackFrame frame = this.frames.getFrame(insnIndex);
 
 			if (frame == null) {
 				break;
@@ -881,16 +872,16 @@ public class LocalVariableTweaker implements Opcodes {
 			if (!expectedLocalType.equals(localType)) {
 				break; // type does not match, different var!
 			}
-			if (tweakedType.equals(localType) && processed.get(insnIndex)) {
+			if (tweakedType.equals(localType) && this.processed.get(insnIndex, varIndex)) {
 				break; // local was already tweaked
 			}
 
 			// if this local was processed before, its current type cannot be
 			// discarded, and a common super type must be found instead
-			if (processed.get(insnIndex)) {
+			if (this.processed.get(insnIndex, varIndex)) {
 				tweakedType = this.classpath.getCommonSuperType(tweakedType, localType);
 			} else {
-				processed.set(insnIndex);
+				this.processed.set(insnIndex, varIndex);
 			}
 
 			// set the local type to the new value
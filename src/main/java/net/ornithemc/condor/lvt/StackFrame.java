@@ -1,7 +1,6 @@
 package net.ornithemc.condor.lvt;
 
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -22,6 +21,7 @@ import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
 import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.TypeTable;
 import net.ornithemc.condor.util.ASM;
 
 public class StackFrame implements Opcodes {
@@ -33,6 +33,11 @@ public class StackFrame implements Opcodes {
 	private int localsSize;
 	private int stackSize;
 
+	// whether the arrays may be shared with other frames, in which
+	// case they must be copied before they are modified
+	private boolean sharedLocals;
+	private boolean sharedStack;
+
 	// whether this frame was expanded from a frame insn
 	private boolean expanded;
 
@@ -49,9 +54,14 @@ public class StackFrame implements Opcodes {
 	}
 
 	public StackFrame init(StackFrame other) {
-		this.locals = Arrays.copyOf(other.locals, other.locals.length);
-		this.stack = Arrays.copyOf(other.stack, other.stack.length);
-		this.stackLocals = Arrays.copyOf(other.stackLocals, other.stackLocals.length);
+		// most insns only touch the stack, if anything, so
+		// the arrays are shared until either frame modifies them
+		this.locals = other.locals;
+		this.stack = other.stack;
+		this.stackLocals = other.stackLocals;
+
+		this.sharedLocals = other.sharedLocals = true;
+		this.sharedStack = other.sharedStack = true;
 
 		this.localsSize = other.localsSize;
 		this.stackSize = other.stackSize;
@@ -83,7 +93,23 @@ public class StackFrame implements Opcodes {
 		return sb.toString();
 	}
 
+	private void modifyLocals() {
+		if (this.sharedLocals) {
+			this.locals = this.locals.clone();
+			this.sharedLocals = false;
+		}
+	}
+
+	private void modifyStack() {
+		if (this.sharedStack) {
+			this.stack = this.stack.clone();
+			this.stackLocals = this.stackLocals.clone();
+			this.sharedStack = false;
+		}
+	}
+
 	public void setLocal(int varIndex, Type type) {
+		this.modifyLocals();
 		this.locals[varIndex] = type;
 		if (type.getSize() == 2) {
 			this.locals[varIndex + 1] = Type.VOID_TYPE;
@@ -97,6 +123,7 @@ public class StackFrame implements Opcodes {
 	public Type removeLocal(int varIndex) {
 		Type type = this.locals[varIndex];
 		if (type != null) {
+			this.modifyLocals();
 			this.locals[varIndex] = null;
 			if (type.getSize() == 2) {
 				this.locals[varIndex + 1] = null;
@@ -110,6 +137,7 @@ public class StackFrame implements Opcodes {
 	}
 
 	public void push(Type type, int varIndex) {
+		this.modifyStack();
 		this.stack[this.stackSize] = type;
 		this.stackLocals[this.stackSize++] = varIndex;
 		if (type.getSize() == 2) {
@@ -168,19 +196,24 @@ public class StackFrame implements Opcodes {
 		return this.stackSize;
 	}
 
-	public void markLocals(BitSet present) {
+	/**
+	 * Mark the locals that are present in this frame in the set at the
+	 * given index.
+	 */
+	void markLocals(LocalSets present, int index) {
 		for (int i = 0; i < this.locals.length; i++) {
 			if (this.locals[i] != null) {
-				present.set(i);
+				present.set(index, i);
 			}
 		}
 	}
 
-	public void compute(String owner, Type[] params) {
+	public void compute(String owner, Type[] params, TypeTable types) {
+		this.modifyLocals();
 		this.localsSize = 0;
 
 		if (owner != null) {
-			this.setLocal(this.localsSize++, Type.getObjectType(owner));
+			this.setLocal(this.localsSize++, types.getObjectType(owner));
 		}
 
 		for (Type param : params) {
@@ -194,13 +227,16 @@ public class StackFrame implements Opcodes {
 		this.expanded = false;
 	}
 
-	public void expand(String owner, Type[] params, FrameNode frame) {
+	public void expand(String owner, Type[] params, FrameNode frame, TypeTable types) {
+		this.modifyLocals();
+		this.modifyStack();
+
 		switch (frame.type) {
 		case F_NEW:
 		case F_FULL:
 			{
-				this.localsSize = this.unpackFrameValues(owner, frame.local, this.locals, 0);
-				this.stackSize = this.unpackFrameValues(owner, frame.stack, this.stack, 0);
+				this.localsSize = this.unpackFrameValues(owner, frame.local, this.locals, 0, types);
+				this.stackSize = this.unpackFrameValues(owner, frame.stack, this.stack, 0, types);
 
 				// type data in frame insns removes information about int related types
 				// 
@@ -209,8 +245,8 @@ public class StackFrame implements Opcodes {
 			break;
 		case F_APPEND:
 			{
-				this.localsSize = this.unpackFrameValues(owner, frame.local, this.locals, this.localsSize);
-				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0);
+				this.localsSize = this.unpackFrameValues(owner, frame.local, this.locals, this.localsSize, types);
+				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0, types);
 			}
 
 			break;
@@ -227,19 +263,19 @@ public class StackFrame implements Opcodes {
 					}
 				}
 
-				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0);
+				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0, types);
 			}
 
 			break;
 		case F_SAME:
 			{
-				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0);
+				this.stackSize = this.unpackFrameValues(owner, Collections.emptyList(), this.stack, 0, types);
 			}
 
 			break;
 		case F_SAME1:
 			{
-				this.stackSize = this.unpackFrameValues(owner, frame.stack, this.stack, 0);
+				this.stackSize = this.unpackFrameValues(owner, frame.stack, this.stack, 0, types);
 			}
 
 			break;
@@ -250,12 +286,12 @@ public class StackFrame implements Opcodes {
 		this.expanded = true;
 	}
 
-	private int unpackFrameValues(String owner, List<Object> values, Type[] types, int start) {
+	private int unpackFrameValues(String owner, List<Object> values, Type[] types, int start, TypeTable typeTable) {
 		int size = start;
 
 		for (int i = 0; i < values.size(); i++) {
 			Object value = values.get(i);
-			Type type = this.parseFrameValue(owner, value);
+			Type type = this.parseFrameValue(owner, value, typeTable);
 
 			types[size++] = type;
 
@@ -270,7 +306,7 @@ public class StackFrame implements Opcodes {
 		return size;
 	}
 
-	private Type parseFrameValue(String owner, Object type) {
+	private Type parseFrameValue(String owner, Object type, TypeTable types) {
 		if (type == TOP) {
 			return null;
 		} else if (type == INTEGER) {
@@ -284,9 +320,9 @@ public class StackFrame implements Opcodes {
 		} else if (type == NULL) {
 			return ASM.NULL_TYPE;
 		} else if (type == UNINITIALIZED_THIS) {
-			return Type.getObjectType(owner);
+			return types.getObjectType(owner);
 		} else if (type instanceof String) {
-			return Type.getObjectType((String) type);
+			return types.getObjectType((String) type);
 		} else if (type instanceof LabelNode) {
 			AbstractInsnNode insn = (LabelNode) type;
 
@@ -297,14 +333,14 @@ public class StackFrame implements Opcodes {
 				throw new UnsupportedOperationException("LabelNode does not designate a NEW instruction");
 			}
 
-			return Type.getObjectType(((TypeInsnNode) insn).desc);
+			return types.getObjectType(((TypeInsnNode) insn).desc);
 		}
 
 		throw new UnsupportedOperationException("Illegal frame value " + type);
 	}
 
 	@SuppressWarnings("unused")
-	public void compute(AbstractInsnNode insn) {
+	public void compute(AbstractInsnNode insn, TypeTable types) {
 		switch (insn.getOpcode()) {
 		case NOP:
 			break;
@@ -435,7 +471,7 @@ public class StackFrame implements Opcodes {
 				Type arrayType = this.pop();
 
 				Type value = (opcode == AALOAD)
-					? Type.getType(arrayType.getDescriptor().substring(1))
+					? types.getComponentType(arrayType)
 					: arrayType.getElementType();
 
 				this.push(value);
@@ -840,7 +876,7 @@ public class StackFrame implements Opcodes {
 				int opcode = insn.getOpcode();
 
 				String desc = ((FieldInsnNode) insn).desc;
-				Type type = Type.getType(desc);
+				Type type = types.getType(desc);
 
 				if (opcode == PUTFIELD || opcode == PUTSTATIC) {
 					if (type.getSize() == 2) {
@@ -869,9 +905,8 @@ public class StackFrame implements Opcodes {
 				String desc = (opcode == INVOKEDYNAMIC)
 					? ((InvokeDynamicInsnNode) insn).desc
 					: ((MethodInsnNode) insn).desc;
-				Type type = Type.getMethodType(desc);
-				Type[] args = type.getArgumentTypes();
-				Type ret = type.getReturnType();
+				Type[] args = types.getArgumentTypes(desc);
+				Type ret = types.getReturnType(desc);
 
 				for (int j = args.length - 1; j >= 0; j--) {
 					if (args[j].getSize() == 2) {
@@ -931,7 +966,7 @@ public class StackFrame implements Opcodes {
 		case NEW:
 			{
 				String desc = ((TypeInsnNode) insn).desc;
-				Type type = Type.getObjectType(desc);
+				Type type = types.getObjectType(desc);
 
 				this.push(type);
 			}
@@ -971,7 +1006,7 @@ public class StackFrame implements Opcodes {
 					throw new UnsupportedOperationException("unknown NEWARRAY operand: " + operand);
 				}
 
-				Type type = Type.getType(desc);
+				Type type = types.getType(desc);
 
 				this.pop(); // size
 				this.push(type);
@@ -981,8 +1016,8 @@ public class StackFrame implements Opcodes {
 		case ANEWARRAY:
 			{
 				String desc = ((TypeInsnNode) insn).desc;
-				Type elementType = Type.getObjectType(desc);
-				Type type = Type.getType("[" + elementType.getDescriptor());
+				Type elementType = types.getObjectType(desc);
+				Type type = types.getArrayType(elementType, 1);
 
 				this.pop(); // size
 				this.push(type);
@@ -992,7 +1027,7 @@ public class StackFrame implements Opcodes {
 		case MULTIANEWARRAY:
 			{
 				String desc = ((MultiANewArrayInsnNode) insn).desc;
-				Type type = Type.getType(desc);
+				Type type = types.getType(desc);
 				int dims = ((MultiANewArrayInsnNode) insn).dims;
 
 				for (int j = 0; j < dims; j++) {
@@ -1022,7 +1057,7 @@ public class StackFrame implements Opcodes {
 		case CHECKCAST:
 			{
 				String desc = ((TypeInsnNode) insn).desc;
-				Type check = Type.getObjectType(desc);
+				Type check = types.getObjectType(desc);
 
 				this.pop(); // type
 				this.push(check);
@@ -1069,6 +1104,7 @@ public class StackFrame implements Opcodes {
 			Type type = this.mergeTypes(this.locals[i], other.locals[i], classpath);
 
 			if (!Objects.equals(this.locals[i], type)) {
+				this.modifyLocals();
 				this.locals[i] = type;
 
 				changed = true;
@@ -1079,11 +1115,13 @@ public class StackFrame implements Opcodes {
 			int varIndex = this.mergeVarIndices(this.stackLocals[i], other.stackLocals[i], type);
 
 			if (!Objects.equals(this.stack[i], type)) {
+				this.modifyStack();
 				this.stack[i] = type;
 
 				changed = true;
 			}
 			if (this.stackLocals[i] != varIndex) {
+				this.modifyStack();
 				this.stackLocals[i] = varIndex;
 
 				changed = true;
@@ -1,36 +1,112 @@
 package net.ornithemc.condor.representation;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 
 public class ClassInstance {
 
-	private final ClassNode node;
+	private static final ClassInstance[] NO_INTERFACES = new ClassInstance[0];
+	private static final String[] NO_NAMES = new String[0];
+
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
 
+	private final ClassSource source;
+	// dense id, used to hash classes in ancestor sets
+	private final int id;
+	// the full class tree, if it has been read
+	private ClassNode node;
+
+	// names are pooled by the class source, and the interface names array
+	// may be shared with other classes, so it must not be modified
 	private final int access;
 	private final String className;
 	private final String superClassName;
 	private final String[] interfaceNames;
 
-	private ClassInstance superClass;
-	private ClassInstance[] interfaces;
+	// links are resolved lazily and may be raced by worker threads,
+	// but any thread resolves them to the same classes in the same context
+	private volatile Links links;
+	// all super classes and interfaces, direct or indirect, found lazily
+	// like the links, so each class in the hierarchy is only visited once
+	private volatile Ancestors ancestors;
 
-	private boolean dirty;
+	private volatile boolean dirty;
 
-	ClassInstance(ClassNode node, int access, String className, String superClassName, String[] interfaceNames) {
+	ClassInstance(ClassSource source, ClassNode node, int access, String className, String superClassName, String[] interfaceNames) {
+		this.source = source;
+		this.id = NEXT_ID.getAndIncrement();
 		this.node = node;
 
+		NamePool names = source.getNamePool();
+
 		this.access = access;
-		this.className = className;
-		this.superClassName = superClassName;
-		this.interfaceNames = interfaceNames == null ? new String[0] : interfaceNames;
+		this.className = names.get(className);
+		this.superClassName = names.get(superClassName);
+		this.interfaceNames = names.get(interfaceNames);
+	}
+
+	/**
+	 * @return the class file, read from the class source,
+	 *         or {@code null} if the class source does not provide it
+	 */
+	public byte[] getClassFile() {
+		try {
+			return this.source.readClassFile(this.className);
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not read class " + this.className, e);
+		}
 	}
 
+	/**
+	 * @return the full class tree, read from the class source on demand,
+	 *         or {@code null} if the class source does not provide it
+	 */
 	public ClassNode getNode() {
+		if (this.node == null) {
+			byte[] classFile = this.getClassFile();
+
+			if (classFile != null) {
+				this.readNode(new ClassReader(classFile));
+			}
+		}
+
 		return this.node;
 	}
 
+	/**
+	 * @return the full class tree, read from the given class file if it has
+	 *         not been read yet
+	 */
+	public ClassNode getNode(ClassReader reader) {
+		if (this.node == null) {
+			this.readNode(reader);
+		}
+
+		return this.node;
+	}
+
+	private void readNode(ClassReader reader) {
+		ClassNode node = new ClassNode();
+		reader.accept(node, 0);
+
+		this.node = node;
+	}
+
+	/**
+	 * Release the full class tree. It will be read from the class source
+	 * again if it is needed later.
+	 */
+	public void releaseNode() {
+		this.node = null;
+	}
+
 	public boolean isInterface() {
 		return (this.access & Opcodes.ACC_INTERFACE) != 0;
 	}
@@ -43,69 +119,141 @@ public class ClassInstance {
 		return Type.getObjectType(this.className);
 	}
 
+	public String getSuperClassName() {
+		return this.superClassName;
+	}
+
+	public String[] getInterfaceNames() {
+		return this.interfaceNames.clone();
+	}
+
+	int getAccess() {
+		return this.access;
+	}
+
+	ClassSource getSource() {
+		return this.source;
+	}
+
+	String[] getInterfaceNamesInternal() {
+		return this.interfaceNames;
+	}
+
+	private Links getLinks(Classpath classpath) {
+		Object context = classpath.getLinkContext(this);
+		Links links = this.links;
+
+		// links resolved in another context may point to other classes
+		if (links == null || links.context != context) {
+			this.links = links = new Links(context);
+		}
+
+		return links;
+	}
+
 	public ClassInstance getSuperClass(Classpath classpath) {
-		if (this.superClass == null && this.superClassName != null) {
-			this.superClass = classpath.getClass(this.superClassName);
+		Links links = this.getLinks(classpath);
+
+		if (links.superClass == null && this.superClassName != null) {
+			links.superClass = classpath.getClass(this.superClassName);
 		}
 
-		return this.superClass;
+		return links.superClass;
 	}
 
 	public ClassInstance[] getInterfaces(Classpath classpath) {
-		if (this.interfaces == null) {
-			this.interfaces = new ClassInstance[this.interfaceNames.length];
+		Links links = this.getLinks(classpath);
+		ClassInstance[] interfaces = links.interfaces;
+
+		if (interfaces == null) {
+			// only publish the array once it is fully resolved
+			interfaces = (this.interfaceNames.length == 0) ? NO_INTERFACES : new ClassInstance[this.interfaceNames.length];
 
 			for (int i = 0; i < this.interfaceNames.length; i++) {
-				this.interfaces[i] = classpath.getClass(this.interfaceNames[i]);
+				interfaces[i] = classpath.getClass(this.interfaceNames[i]);
 			}
+
+			links.interfaces = interfaces;
 		}
 
-		return this.interfaces;
+		return interfaces;
 	}
 
-	public boolean hasSuperClass(Classpath classpath, ClassInstance cls) {
-		if (cls == classpath.getObject()) {
-			return true;
+	private Ancestors getAncestors(Classpath classpath) {
+		Ancestors ancestors = this.ancestors;
+
+		// ancestors found in another context may be other classes
+		if (ancestors == null || !classpath.isAncestorContext(this, ancestors.context, ancestors.classes, ancestors.missingNames)) {
+			this.ancestors = ancestors = this.findAncestors(classpath);
 		}
 
-		return this.findSuperClass(classpath, cls.className) != null;
+		return ancestors;
 	}
 
-	public ClassInstance findSuperClass(Classpath classpath, String superClassName) {
+	private Ancestors findAncestors(Classpath classpath) {
 		ClassInstance superClass = this.getSuperClass(classpath);
+		ClassInstance[] interfaces = this.getInterfaces(classpath);
+
+		// the ancestors of the super class and interfaces overlap, so this
+		// is at most the number of ancestors
+		int size = 0;
 
 		if (superClass != null) {
-			if (superClass.className.equals(superClassName)) {
-				return superClass;
+			size += 1 + superClass.getAncestors(classpath).size;
+		}
+		for (ClassInstance intrface : interfaces) {
+			if (intrface != null) {
+				size += 1 + intrface.getAncestors(classpath).size;
 			}
+		}
 
-			superClass = superClass.findSuperClass(classpath, superClassName);
+		ClassInstance[] classes = Ancestors.newTable(size);
+		// names of ancestors that could not be found, so that they are
+		// checked when the ancestors are reused
+		String[] missingNames = NO_NAMES;
 
-			if (superClass != null) {
-				return superClass;
-			}
+		size = 0;
+
+		if (superClass != null) {
+			Ancestors ancestors = superClass.getAncestors(classpath);
+
+			size += Ancestors.add(classes, superClass);
+			size += Ancestors.addAll(classes, ancestors);
+			missingNames = Ancestors.addMissing(missingNames, ancestors.missingNames);
+		} else if (this.superClassName != null) {
+			missingNames = Ancestors.addMissing(missingNames, this.superClassName);
 		}
 
-		ClassInstance intrface = this.findSuperClassInInterfaces(classpath, superClassName);
+		for (int i = 0; i < interfaces.length; i++) {
+			ClassInstance intrface = interfaces[i];
 
-		if (intrface != null) {
-			return intrface;
+			if (intrface != null) {
+				Ancestors ancestors = intrface.getAncestors(classpath);
+
+				size += Ancestors.add(classes, intrface);
+				size += Ancestors.addAll(classes, ancestors);
+				missingNames = Ancestors.addMissing(missingNames, ancestors.missingNames);
+			} else {
+				missingNames = Ancestors.addMissing(missingNames, this.interfaceNames[i]);
+			}
 		}
 
-		return null;
+		return new Ancestors(classpath.getAncestorContext(this, classes), Ancestors.trim(classes, size), size, missingNames);
 	}
 
-	public ClassInstance findSuperClassInInterfaces(Classpath classpath, String superClassName) {
-		for (ClassInstance intrface : this.getInterfaces(classpath)) {
-			if (intrface.className.equals(superClassName)) {
-				return intrface;
-			}
+	public boolean hasSuperClass(Classpath classpath, ClassInstance cls) {
+		if (cls == classpath.getObject()) {
+			return true;
+		}
 
-			intrface = intrface.findSuperClassInInterfaces(classpath, superClassName);
+		return this.getAncestors(classpath).contains(cls);
+	}
 
-			if (intrface != null) {
-				return intrface;
-			}
+	public ClassInstance findSuperClass(Classpath classpath, String superClassName) {
+		ClassInstance cls = classpath.getClass(superClassName);
+
+		if (cls != null && this.getAncestors(classpath).contains(cls)) {
+			return cls;
 		}
 
 		return null;
@@ -118,4 +266,130 @@ public class ClassInstance {
 	public boolean isDirty() {
 		return this.dirty;
 	}
+
+	private static class Links {
+
+		final Object context;
+
+		volatile ClassInstance superClass;
+		volatile ClassInstance[] interfaces;
+
+		Links(Object context) {
+			this.context = context;
+		}
+	}
+
+	/**
+	 * An identity set of the super classes and interfaces of a class, as an
+	 * open addressing hash table keyed by class ids, with no entry objects.
+	 */
+	private static class Ancestors {
+
+		final Object context;
+		final ClassInstance[] classes;
+		final int size;
+		final String[] missingNames;
+
+		Ancestors(Object context, ClassInstance[] classes, int size, String[] missingNames) {
+			this.context = context;
+			this.classes = classes;
+			this.size = size;
+			this.missingNames = missingNames;
+		}
+
+		boolean contains(ClassInstance cls) {
+			int mask = this.classes.length - 1;
+
+			for (int i = hash(cls) & mask; ; i = (i + 1) & mask) {
+				ClassInstance ancestor = this.classes[i];
+
+				if (ancestor == cls) {
+					return true;
+				}
+				if (ancestor == null) {
+					return false;
+				}
+			}
+		}
+
+		static ClassInstance[] newTable(int size) {
+			// keep at least one slot free, so that lookups end,
+			// and at most half the slots taken, so that they end fast
+			int capacity = 1;
+
+			while (capacity <= 2 * size) {
+				capacity <<= 1;
+			}
+
+			return new ClassInstance[capacity];
+		}
+
+		/**
+		 * @return 1 if the given class was added, 0 if it was already present
+		 */
+		static int add(ClassInstance[] classes, ClassInstance cls) {
+			int mask = classes.length - 1;
+
+			for (int i = hash(cls) & mask; ; i = (i + 1) & mask) {
+				ClassInstance ancestor = classes[i];
+
+				if (ancestor == cls) {
+					return 0;
+				}
+				if (ancestor == null) {
+					classes[i] = cls;
+					return 1;
+				}
+			}
+		}
+
+		static int addAll(ClassInstance[] classes, Ancestors ancestors) {
+			int added = 0;
+
+			for (ClassInstance ancestor : ancestors.classes) {
+				if (ancestor != null) {
+					added += add(classes, ancestor);
+				}
+			}
+
+			return added;
+		}
+
+		static String[] addMissing(String[] missingNames, String... names) {
+			for (String name : names) {
+				if (!Arrays.asList(missingNames).contains(name)) {
+					missingNames = Arrays.copyOf(missingNames, missingNames.length + 1);
+					missingNames[missingNames.length - 1] = name;
+				}
+			}
+
+			return missingNames;
+		}
+
+		/**
+		 * @return a table for the given classes sized to the given number of
+		 *         classes, which is smaller if the ancestors overlapped
+		 */
+		static ClassInstance[] trim(ClassInstance[] classes, int size) {
+			ClassInstance[] trimmed = newTable(size);
+
+			if (trimmed.length == classes.length) {
+				return classes;
+			}
+
+			for (ClassInstance cls : classes) {
+				if (cls != null) {
+					add(trimmed, cls);
+				}
+			}
+
+			return trimmed;
+		}
+
+		private static int hash(ClassInstance cls) {
+			// ids are sequential, so spread them over the table
+			int hash = cls.id * 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+	}
 }
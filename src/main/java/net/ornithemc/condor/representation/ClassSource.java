@@ -3,8 +3,8 @@ package net.ornithemc.condor.representation;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -14,16 +14,45 @@ import net.ornithemc.condor.util.ASM;
 
 public class ClassSource {
 
+	// must be a power of 2
+	private static final int LOCK_STRIPES = 64;
+
 	private final Map<String, ClassInstance> classInstances;
+	// names shared by the headers of classes from this source
+	private final NamePool names;
+	// locks used to make sure each class is read only once,
+	// without blocking lookups of unrelated classes
+	private final Object[] locks;
 
 	protected ClassSource() {
-		this.classInstances = new HashMap<>();
+		this.classInstances = new ConcurrentHashMap<>();
+		this.names = new NamePool();
+		this.locks = new Object[LOCK_STRIPES];
+
+		for (int i = 0; i < this.locks.length; i++) {
+			this.locks[i] = new Object();
+		}
 	}
 
 	public void open() throws IOException {
 	}
 
+	/**
+	 * Close this source. Subclasses must call this once they are closed
+	 * themselves.
+	 */
 	public void close() throws IOException {
+		// the names of classes read while this source was open
+		// are not shared with those read once it is opened again
+		this.names.clear();
+	}
+
+	/**
+	 * Close this source after a failed run, discarding any classes written
+	 * since it was opened rather than committing them.
+	 */
+	public void abort() throws IOException {
+		this.close();
 	}
 
 	public Collection<ClassInstance> getClasses() {
@@ -34,30 +63,89 @@ public class ClassSource {
 		return this.classInstances.get(name);
 	}
 
+	/**
+	 * @return the names of all classes this source can provide, including
+	 *         those that have not been read yet
+	 */
+	public Collection<String> getClassNames() {
+		return this.classInstances.keySet();
+	}
+
 	public boolean hasClass(String name) {
 		return this.classInstances.containsKey(name);
 	}
 
+	NamePool getNamePool() {
+		return this.names;
+	}
+
+	protected Object getLock(String name) {
+		int hash = name.hashCode();
+		// spread the higher bits since only the lower bits are used
+		hash ^= (hash >>> 16);
+
+		return this.locks[hash & (LOCK_STRIPES - 1)];
+	}
+
 	protected void addClass(ClassInstance cls) {
 		this.classInstances.put(cls.getName(), cls);
 	}
 
 	protected void readClass(InputStream is, boolean fully) throws IOException {
-		ClassReader reader = new ClassReader(is);
-		ClassNode node = fully ? new ClassNode() : null;
-		ClassVisitor visitor = new ClassVisitor(ASM.API_VERSION, node) {
+		this.readClass(new ClassReader(is), fully);
+	}
+
+	protected void readClass(byte[] bytes, boolean fully) {
+		this.readClass(new ClassReader(bytes), fully);
+	}
+
+	protected void readClass(ClassReader reader, boolean fully) {
+		if (fully) {
+			ClassNode node = new ClassNode();
+			ClassVisitor visitor = new ClassVisitor(ASM.API_VERSION, node) {
+
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					ClassSource.this.addClass(new ClassInstance(ClassSource.this, node, access, name, superName, interfaces));
 
-			@Override
-			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-				ClassSource.this.addClass(new ClassInstance(node, access, name, superName, interfaces));
+					super.visit(version, access, name, signature, superName, interfaces);
+				}
+			};
 
-				super.visit(version, access, name, signature, superName, interfaces);
-			}
-		};
+			reader.accept(visitor, 0);
+		} else {
+			// the header can be read without visiting the class at all
+			this.addClass(new ClassInstance(this, null, reader.getAccess(), reader.getClassName(), reader.getSuperName(), reader.getInterfaces()));
+		}
+	}
 
-		reader.accept(visitor, fully ? 0 : ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+	/**
+	 * Read the class file of the given class.
+	 *
+	 * @return the class file, or {@code null} if this source does not provide
+	 *         class files
+	 */
+	protected byte[] readClassFile(String name) throws IOException {
+		return null;
 	}
 
 	public void writeClass(String name) throws IOException {
 	}
+
+	/**
+	 * Write the given class file for the given class, rather than writing
+	 * its class tree.
+	 */
+	public void writeClass(String name, byte[] bytes) throws IOException {
+	}
+
+	/**
+	 * Keep the class file written for the given class by a previous run,
+	 * rather than writing it again.
+	 *
+	 * @return whether the previous class file is available
+	 */
+	public boolean reuseClass(String name) throws IOException {
+		return false;
+	}
 }
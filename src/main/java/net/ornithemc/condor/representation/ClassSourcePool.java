@@ -0,0 +1,293 @@
+package net.ornithemc.condor.representation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A pool of open class sources that can be shared between classpaths. The
+ * Java runtime environment is opened once, and each library is opened once
+ * per distinct path, no matter how many classpaths use it.
+ *
+ * <p>
+ * Libraries are handed out with {@link #acquire} and must be given back with
+ * {@link #release} once the classpath using them is closed. A library jar
+ * that has changed on disk since it was opened is opened again for later
+ * classpaths, and the old one is closed once no classpath is using it.
+ */
+public class ClassSourcePool implements Closeable {
+
+	private final ClassSource jre;
+	// for each library path, the currently open library
+	private final Map<Path, Library> libs;
+	// for each distinct list of library paths, the current libraries
+	private final Map<List<Path>, PooledLibraries> libraries;
+	// for each libraries handed out, its pool entry
+	private final Map<Libraries, PooledLibraries> acquired;
+
+	private boolean open;
+
+	public ClassSourcePool() throws IOException {
+		this(null);
+	}
+
+	/**
+	 * @param jre the runtime to read JDK classes from, see
+	 *            {@link Libraries#Libraries(List, Path)}
+	 */
+	public ClassSourcePool(Path jre) throws IOException {
+		this.jre = Libraries.createJre(jre);
+		this.libs = new HashMap<>();
+		this.libraries = new HashMap<>();
+		this.acquired = new HashMap<>();
+	}
+
+	/**
+	 * @return open, shared libraries for the given library paths
+	 */
+	public Libraries acquire(List<Path> paths) throws IOException {
+		List<Path> key = new ArrayList<>();
+		for (Path path : paths) {
+			key.add(path.toAbsolutePath().normalize());
+		}
+
+		// libraries are opened outside the lock, so that other classpaths
+		// are not held up by reading jars from disk, and only then published
+		Map<Path, Library> opened = new HashMap<>();
+
+		try {
+			while (true) {
+				List<Path> missing = new ArrayList<>();
+
+				synchronized (this) {
+					if (!this.open) {
+						this.jre.open();
+						this.open = true;
+					}
+
+					for (Path path : key) {
+						this.checkStale(path);
+					}
+
+					PooledLibraries libraries = this.libraries.get(key);
+
+					if (libraries == null) {
+						for (Path path : key) {
+							if (!this.libs.containsKey(path) && !opened.containsKey(path) && !missing.contains(path)) {
+								missing.add(path);
+							}
+						}
+					}
+					if (missing.isEmpty()) {
+						if (libraries == null) {
+							List<Library> libs = new ArrayList<>();
+
+							for (Path path : key) {
+								// another classpath may have published the library in the meantime
+								Library lib = this.libs.get(path);
+
+								if (lib == null) {
+									lib = opened.remove(path);
+									this.libs.put(path, lib);
+								}
+
+								lib.refs++;
+								libs.add(lib);
+							}
+
+							libraries = new PooledLibraries(this.jre, libs);
+							libraries.libraries.open();
+
+							this.libraries.put(key, libraries);
+							this.acquired.put(libraries.libraries, libraries);
+						}
+
+						libraries.refs++;
+
+						return libraries.libraries;
+					}
+				}
+
+				for (Path path : missing) {
+					Library lib = new Library(path);
+					opened.put(path, lib);
+					lib.open();
+				}
+			}
+		} finally {
+			// close libraries that were opened but not published
+			for (Library lib : opened.values()) {
+				lib.source.close();
+			}
+		}
+	}
+
+	/**
+	 * Give back libraries that were handed out by this pool.
+	 */
+	public synchronized void release(Libraries libraries) throws IOException {
+		PooledLibraries pooled = this.acquired.get(libraries);
+
+		if (pooled == null) {
+			throw new IllegalArgumentException("libraries not handed out by this pool");
+		}
+
+		pooled.refs--;
+
+		if (pooled.stale && pooled.refs == 0) {
+			this.closeLibraries(pooled);
+		}
+	}
+
+	private void checkStale(Path path) throws IOException {
+		Library lib = this.libs.get(path);
+
+		if (lib == null || !lib.isStale()) {
+			return;
+		}
+
+		// any later classpath will open the library again
+		this.libs.remove(path);
+
+		// not used by any libraries at all, otherwise it is closed
+		// once the last libraries using it are closed
+		if (lib.refs == 0) {
+			lib.source.close();
+			return;
+		}
+
+		for (Iterator<PooledLibraries> it = this.libraries.values().iterator(); it.hasNext(); ) {
+			PooledLibraries libraries = it.next();
+
+			if (libraries.libs.contains(lib)) {
+				it.remove();
+				libraries.stale = true;
+
+				if (libraries.refs == 0) {
+					this.closeLibraries(libraries);
+				}
+			}
+		}
+	}
+
+	private void closeLibraries(PooledLibraries libraries) throws IOException {
+		this.acquired.remove(libraries.libraries);
+		libraries.libraries.close();
+
+		for (Library lib : libraries.libs) {
+			this.releaseLibrary(lib);
+		}
+	}
+
+	private void releaseLibrary(Library lib) throws IOException {
+		lib.refs--;
+
+		// libraries are kept open while they are current, even when
+		// no classpath is using them, so they can be reused later
+		if (lib.refs == 0 && this.libs.get(lib.path) != lib) {
+			lib.source.close();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		IOException exception = null;
+
+		Set<Library> libs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (PooledLibraries libraries : this.acquired.values()) {
+			libraries.libraries.close();
+			libs.addAll(libraries.libs);
+		}
+		libs.addAll(this.libs.values());
+
+		for (Library lib : libs) {
+			try {
+				lib.source.close();
+			} catch (IOException e) {
+				if (exception == null) {
+					exception = e;
+				} else {
+					exception.addSuppressed(e);
+				}
+			}
+		}
+
+		this.jre.close();
+
+		this.acquired.clear();
+		this.libraries.clear();
+		this.libs.clear();
+		this.open = false;
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private static class Library {
+
+		final Path path;
+		final ClassSource source;
+
+		// the state of the file when it was opened
+		long size;
+		long lastModified;
+
+		int refs;
+
+		Library(Path path) throws IOException {
+			this.path = path;
+			this.source = Libraries.createLibrary(path);
+		}
+
+		void open() throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+
+			this.source.open();
+		}
+
+		boolean isStale() throws IOException {
+			if (!Files.exists(this.path)) {
+				return true;
+			}
+
+			BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+
+			return attributes.size() != this.size || attributes.lastModifiedTime().toMillis() != this.lastModified;
+		}
+	}
+
+	private static class PooledLibraries {
+
+		final List<Library> libs;
+		final Libraries libraries;
+
+		int refs;
+		boolean stale;
+
+		PooledLibraries(ClassSource jre, List<Library> libs) {
+			this.libs = libs;
+
+			List<ClassSource> sources = new ArrayList<>();
+			for (Library lib : libs) {
+				sources.add(lib.source);
+			}
+
+			this.libraries = new Libraries(jre, sources);
+		}
+	}
+}
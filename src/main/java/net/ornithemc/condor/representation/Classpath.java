@@ -3,6 +3,9 @@ package net.ornithemc.condor.representation;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.objectweb.asm.Type;
 
@@ -10,34 +13,103 @@ import net.ornithemc.condor.util.ASM;
 
 public class Classpath {
 
-	private final ClassSource jre;
 	private final ClassSource jar;
-	private final ClassSource[] libs;
+	private final Libraries libraries;
+	// whether the libraries are opened and closed along with this classpath,
+	// or are shared with other classpaths
+	private final boolean ownsLibraries;
 
-	private ClassInstance object;
+	private volatile ClassInstance object;
+
+	private final TypeTable types = new TypeTable();
+
+	// common super types of pairs of reference types, since the same pairs
+	// recur while merging frames of many methods
+	// a classpath is used for a single run, so this only holds the pairs
+	// found in that run, and is dropped once the classpath is closed
+	private final Map<TypePair, Type> commonSuperTypes = new ConcurrentHashMap<>();
+	private final LongAdder commonSuperTypeHits = new LongAdder();
+	private final LongAdder commonSuperTypeMisses = new LongAdder();
 
 	public Classpath(Path jar, List<Path> libs) throws IOException {
-		this.jre = new JavaRuntimeEnvironment();
-		this.jar = new JarInstance(jar, true);
-		this.libs = new ClassSource[libs.size()];
-		for (int i = 0; i < libs.size(); i++) {
-			this.libs[i] = new JarInstance(libs.get(i), false);
-		}
+		this(jar, null, libs);
+	}
+
+	/**
+	 * Create a classpath for the given main jar and libraries. If an output path
+	 * is given, modified classes are written to a new jar at that path, rather
+	 * than to the main jar itself.
+	 */
+	public Classpath(Path jar, Path output, List<Path> libs) throws IOException {
+		this(createJar(jar, output), new Libraries(libs), true);
+	}
+
+	/**
+	 * Create a classpath for the given main jar and shared libraries. The
+	 * libraries must be opened before this classpath is opened, and they
+	 * are not closed along with this classpath.
+	 */
+	public Classpath(Path jar, Path output, Libraries libraries) throws IOException {
+		this(createJar(jar, output), libraries, false);
+	}
+
+	/**
+	 * Create a classpath for the given main class source and shared libraries.
+	 * The libraries must be opened before this classpath is opened, and they
+	 * are not closed along with this classpath.
+	 */
+	public Classpath(ClassSource jar, Libraries libraries) {
+		this(jar, libraries, false);
+	}
+
+	/**
+	 * Create a classpath for the given main class source and libraries. If the
+	 * libraries are owned by this classpath, they are opened and closed along
+	 * with it, otherwise they must be opened before this classpath is opened.
+	 */
+	public Classpath(ClassSource jar, Libraries libraries, boolean ownsLibraries) {
+		this.jar = jar;
+		this.libraries = libraries;
+		this.ownsLibraries = ownsLibraries;
+	}
+
+	private static ClassSource createJar(Path jar, Path output) throws IOException {
+		return (output == null) ? new JarInstance(jar, true) : new JarInstance(jar, output);
 	}
 
 	public void open() throws IOException {
-		this.jre.open();
 		this.jar.open();
-		for (ClassSource lib : this.libs) {
-			lib.open();
+
+		if (this.ownsLibraries) {
+			this.libraries.open();
 		}
 	}
 
 	public void close() throws IOException {
-		this.jre.close();
-		this.jar.close();
-		for (ClassSource lib : this.libs) {
-			lib.close();
+		try {
+			this.jar.close();
+		} finally {
+			if (this.ownsLibraries) {
+				this.libraries.close();
+			}
+
+			this.commonSuperTypes.clear();
+		}
+	}
+
+	/**
+	 * Close this classpath after a failed run, discarding the classes written
+	 * to the main jar rather than committing them.
+	 */
+	public void abort() throws IOException {
+		try {
+			this.jar.abort();
+		} finally {
+			if (this.ownsLibraries) {
+				this.libraries.close();
+			}
+
+			this.commonSuperTypes.clear();
 		}
 	}
 
@@ -45,30 +117,109 @@ public class Classpath {
 		return this.jar;
 	}
 
+	/**
+	 * @return the table of canonical types used for classes on this classpath
+	 */
+	public TypeTable getTypeTable() {
+		return this.types;
+	}
+
 	public ClassInstance getClass(Type type) {
 		return this.getClass(type.getInternalName());
 	}
 
 	public ClassInstance getClass(String name) {
 		try {
-			ClassInstance cls = jar.getClass(name);
+			// classes from the main jar take precedence over those from the libraries
+			ClassInstance cls = this.jar.getClass(name);
 
 			if (cls != null) {
 				return cls;
 			}
 
-			for (ClassSource lib : this.libs) {
-				cls = lib.getClass(name);
+			return this.libraries.getClass(name);
+		} catch (IOException e) {
+			throw new RuntimeException("could not find class " + name, e);
+		}
+	}
 
-				if (cls != null) {
-					return cls;
-				}
+	/**
+	 * The hierarchy links of a class are resolved within a context, and can
+	 * be reused for any classpath with the same context.
+	 *
+	 * <p>
+	 * Library classes resolve their links within the libraries, so they can
+	 * be shared by all classpaths using those libraries, unless the main jar
+	 * shadows any of the linked classes.
+	 *
+	 * @return the context in which the links of the given class are resolved
+	 */
+	Object getLinkContext(ClassInstance cls) {
+		if (this.ownsLibraries || cls.getSource() == this.jar) {
+			return this;
+		}
+
+		String superClassName = cls.getSuperClassName();
+
+		if (superClassName != null && this.jar.hasClass(superClassName)) {
+			return this;
+		}
+		for (String interfaceName : cls.getInterfaceNamesInternal()) {
+			if (this.jar.hasClass(interfaceName)) {
+				return this;
 			}
+		}
 
-			return this.jre.getClass(name);
-		} catch (IOException e) {
-			throw new RuntimeException("could not find class " + name, e);
+		return this.libraries;
+	}
+
+	/**
+	 * The ancestors of a class are found within a context, like its links,
+	 * but that context depends on the entire hierarchy of the class.
+	 *
+	 * @return the context in which the given ancestors of the given class
+	 *         were found
+	 */
+	Object getAncestorContext(ClassInstance cls, ClassInstance[] ancestors) {
+		if (this.ownsLibraries || cls.getSource() == this.jar) {
+			return this;
+		}
+
+		for (ClassInstance ancestor : ancestors) {
+			if (ancestor != null && ancestor.getSource() == this.jar) {
+				return this;
+			}
 		}
+
+		return this.libraries;
+	}
+
+	/**
+	 * @return whether ancestors of the given class, found in the given context,
+	 *         can be reused for this classpath, given those ancestors and the
+	 *         names of those that could not be found
+	 */
+	boolean isAncestorContext(ClassInstance cls, Object context, ClassInstance[] ancestors, String[] missingNames) {
+		if (context == this) {
+			return true;
+		}
+		if (context != this.libraries || this.ownsLibraries || cls.getSource() == this.jar) {
+			return false;
+		}
+
+		// the main jar must not shadow, or provide, any of the ancestors
+		for (ClassInstance ancestor : ancestors) {
+			if (ancestor != null && this.jar.hasClass(ancestor.getName())) {
+				return false;
+			}
+		}
+		for (String name : missingNames) {
+			if (this.jar.hasClass(name)) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	public ClassInstance getObject() {
@@ -80,7 +231,7 @@ public class Classpath {
 	}
 
 	public Type getCommonSuperClass(Type type1, Type type2) {
-		return this.getCommonSuperClass(this.getClass(type1), this.getClass(type2)).getType();
+		return this.types.getObjectType(this.getCommonSuperClass(this.getClass(type1), this.getClass(type2)).getName());
 	}
 
 	public ClassInstance getCommonSuperClass(ClassInstance cls1, ClassInstance cls2) {
@@ -119,6 +270,26 @@ public class Classpath {
 			// incompatible primitive types
 			return null;
 		}
+		if ((type1.getSort() == Type.ARRAY || type1.getSort() == Type.OBJECT) && (type2.getSort() == Type.ARRAY || type2.getSort() == Type.OBJECT)) {
+			TypePair types = new TypePair(type1, type2);
+			Type commonSuperType = this.commonSuperTypes.get(types);
+
+			if (commonSuperType != null) {
+				this.commonSuperTypeHits.increment();
+			} else {
+				this.commonSuperTypeMisses.increment();
+
+				commonSuperType = this.findCommonSuperType(type1, type2);
+				this.commonSuperTypes.put(types, commonSuperType);
+			}
+
+			return commonSuperType;
+		}
+
+		throw new IllegalArgumentException("given illegal type(s) " + type1 + " and " + type2);
+	}
+
+	private Type findCommonSuperType(Type type1, Type type2) {
 		if (type1.getSort() == Type.ARRAY && type2.getSort() == Type.ARRAY) {
 			int dims1 = type1.getDimensions();
 			Type elem1 = type1.getElementType();
@@ -133,10 +304,10 @@ public class Classpath {
 				} else if (elem1.getSort() == Type.OBJECT && elem2.getSort() == Type.OBJECT) {
 					commonSuperType = this.getCommonSuperClass(elem1, elem2);
 				} else {
-					return ASM.getArrayType(ASM.OBJECT_TYPE, dims1 - 1);
+					return this.types.getArrayType(ASM.OBJECT_TYPE, dims1 - 1);
 				}
 
-				return ASM.getArrayType(commonSuperType, dims1);
+				return this.types.getArrayType(commonSuperType, dims1);
 			} else {
 				int shared;
 				Type smaller;
@@ -152,16 +323,81 @@ public class Classpath {
 					shared++;
 				}
 
-				return ASM.getArrayType(ASM.OBJECT_TYPE, shared);
+				return this.types.getArrayType(ASM.OBJECT_TYPE, shared);
 			}
 		}
 		if (type1.getSort() == Type.OBJECT && type2.getSort() == Type.OBJECT) {
 			return this.getCommonSuperClass(type1, type2);
 		}
-		if ((type1.getSort() == Type.ARRAY && type2.getSort() == Type.OBJECT) || (type1.getSort() == Type.OBJECT && type2.getSort() == Type.ARRAY)) {
-			return ASM.OBJECT_TYPE;
+
+		// an array and an object type
+		return ASM.OBJECT_TYPE;
+	}
+
+	/**
+	 * @return how often a common super type of two reference types was found
+	 *         in the memo
+	 */
+	public long getCommonSuperTypeHits() {
+		return this.commonSuperTypeHits.sum();
+	}
+
+	/**
+	 * @return how often a common super type of two reference types was not
+	 *         found in the memo, and had to be computed
+	 */
+	public long getCommonSuperTypeMisses() {
+		return this.commonSuperTypeMisses.sum();
+	}
+
+	/**
+	 * An unordered pair of types. The common super type of two types does not
+	 * depend on their order, so the types are put in a canonical order, and
+	 * both orders share a single memo entry.
+	 */
+	private static class TypePair {
+
+		final Type type1;
+		final Type type2;
+		final int hash;
+
+		TypePair(Type type1, Type type2) {
+			int hash1 = type1.hashCode();
+			int hash2 = type2.hashCode();
+
+			// only fall back to the descriptors if the hashes collide
+			if (hash1 > hash2 || (hash1 == hash2 && type1.getDescriptor().compareTo(type2.getDescriptor()) > 0)) {
+				Type type = type1;
+				type1 = type2;
+				type2 = type;
+
+				int hash = hash1;
+				hash1 = hash2;
+				hash2 = hash;
+			}
+
+			this.type1 = type1;
+			this.type2 = type2;
+			this.hash = 31 * hash1 + hash2;
 		}
 
-		throw new IllegalArgumentException("given illegal type(s) " + type1 + " and " + type2);
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TypePair)) {
+				return false;
+			}
+
+			TypePair other = (TypePair) obj;
+			return this.type1.equals(other.type1) && this.type2.equals(other.type2);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
 	}
 }
+
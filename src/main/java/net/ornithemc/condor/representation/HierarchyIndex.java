@@ -0,0 +1,366 @@
+package net.ornithemc.condor.representation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class source backed by a precomputed hierarchy index, rather than by class
+ * files. The index only holds what is needed to resolve class hierarchies:
+ * the name, access flags, super class and interfaces of each class.
+ *
+ * <p>
+ * The index is a single binary file that is memory mapped when opened, and
+ * class headers are read from it on demand. All values are big-endian.
+ *
+ * <pre>
+ * int    magic
+ * int    version
+ * int    string count
+ * int    class count
+ * int    interface count
+ * int[]  string offsets, one for each string plus one for the end
+ * int[]  classes, 5 values each: name id, access, super name id or -1,
+ *        index of the first interface id, interface count
+ * int[]  interface name ids
+ * byte[] string data, UTF-8
+ * </pre>
+ *
+ * Classes are sorted by the bytes of their names, so they can be found with a
+ * binary search without decoding any other names.
+ */
+public class HierarchyIndex extends ClassSource {
+
+	/**
+	 * The file extension of hierarchy index files.
+	 */
+	public static final String EXTENSION = ".hierarchy";
+
+	private static final int MAGIC = 0x434E4849; // CNHI
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 5 * 4;
+	private static final int CLASS_SIZE = 5;
+
+	// the index file, or null if read from a resource
+	private final Path path;
+	private final String resource;
+
+	private ByteBuffer buffer;
+	private int stringCount;
+	private int classCount;
+	private int stringOffsets;
+	private int classes;
+	private int interfaces;
+	private int strings;
+
+	public HierarchyIndex(Path path) {
+		this.path = path;
+		this.resource = null;
+	}
+
+	private HierarchyIndex(String resource) {
+		this.path = null;
+		this.resource = resource;
+	}
+
+	/**
+	 * @return a hierarchy index read from the given class path resource
+	 */
+	public static HierarchyIndex fromResource(String resource) {
+		return new HierarchyIndex(resource);
+	}
+
+	/**
+	 * @return whether the given path is a hierarchy index file
+	 */
+	public static boolean isIndex(Path path) {
+		return path.getFileName().toString().endsWith(EXTENSION);
+	}
+
+	@Override
+	public void open() throws IOException {
+		if (this.buffer != null) {
+			return;
+		}
+
+		ByteBuffer buffer;
+
+		if (this.path != null) {
+			try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+		} else {
+			// resources in jars cannot be mapped
+			try (InputStream is = HierarchyIndex.class.getResourceAsStream(this.resource)) {
+				if (is == null) {
+					throw new IOException("hierarchy index resource " + this.resource + " not found");
+				}
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] b = new byte[8192];
+
+				for (int n; (n = is.read(b)) > 0; ) {
+					bytes.write(b, 0, n);
+				}
+
+				buffer = ByteBuffer.wrap(bytes.toByteArray());
+			}
+		}
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a hierarchy index: " + this.describe());
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported hierarchy index version " + buffer.getInt(4) + ": " + this.describe());
+		}
+
+		this.stringCount = buffer.getInt(8);
+		this.classCount = buffer.getInt(12);
+		int interfaceCount = buffer.getInt(16);
+
+		this.stringOffsets = HEADER_SIZE;
+		this.classes = this.stringOffsets + 4 * (this.stringCount + 1);
+		this.interfaces = this.classes + 4 * CLASS_SIZE * this.classCount;
+		this.strings = this.interfaces + 4 * interfaceCount;
+
+		this.buffer = buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.buffer = null;
+
+		super.close();
+	}
+
+	private String describe() {
+		return (this.path != null) ? this.path.toString() : this.resource;
+	}
+
+	@Override
+	public ClassInstance getClass(String name) throws IOException {
+		ClassInstance cls = super.getClass(name);
+
+		if (cls == null) {
+			int index = this.findClass(name.getBytes(StandardCharsets.UTF_8));
+
+			if (index >= 0) {
+				synchronized (this.getLock(name)) {
+					// another thread may have read the class in the meantime
+					cls = super.getClass(name);
+
+					if (cls == null) {
+						cls = this.readClass(index, name);
+						this.addClass(cls);
+					}
+				}
+			}
+		}
+
+		return cls;
+	}
+
+	@Override
+	public Collection<String> getClassNames() {
+		List<String> names = new ArrayList<>(this.classCount);
+
+		for (int i = 0; i < this.classCount; i++) {
+			names.add(this.getString(this.getClassValue(i, 0)));
+		}
+
+		return Collections.unmodifiableList(names);
+	}
+
+	private int findClass(byte[] name) {
+		int low = 0;
+		int high = this.classCount - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = this.compareString(this.getClassValue(mid, 0), name);
+
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -1;
+	}
+
+	private ClassInstance readClass(int index, String name) {
+		int access = this.getClassValue(index, 1);
+		int superId = this.getClassValue(index, 2);
+		int interfacesStart = this.getClassValue(index, 3);
+		int interfaceCount = this.getClassValue(index, 4);
+
+		String superName = (superId < 0) ? null : this.getString(superId);
+		String[] interfaceNames = new String[interfaceCount];
+
+		for (int i = 0; i < interfaceCount; i++) {
+			interfaceNames[i] = this.getString(this.buffer.getInt(this.interfaces + 4 * (interfacesStart + i)));
+		}
+
+		return new ClassInstance(this, null, access, name, superName, interfaceNames);
+	}
+
+	private int getClassValue(int index, int field) {
+		return this.buffer.getInt(this.classes + 4 * (CLASS_SIZE * index + field));
+	}
+
+	private String getString(int id) {
+		int start = this.buffer.getInt(this.stringOffsets + 4 * id);
+		int end = this.buffer.getInt(this.stringOffsets + 4 * (id + 1));
+		byte[] bytes = new byte[end - start];
+
+		// duplicate the buffer so concurrent reads do not share a position
+		ByteBuffer buffer = this.buffer.duplicate();
+		buffer.position(this.strings + start);
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int compareString(int id, byte[] s) {
+		int start = this.strings + this.buffer.getInt(this.stringOffsets + 4 * id);
+		int length = this.strings + this.buffer.getInt(this.stringOffsets + 4 * (id + 1)) - start;
+
+		for (int i = 0; i < length && i < s.length; i++) {
+			int cmp = (this.buffer.get(start + i) & 0xFF) - (s[i] & 0xFF);
+
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return length - s.length;
+	}
+
+	/**
+	 * Write a hierarchy index of all classes in the given jar or JDK.
+	 *
+	 * @param source a jar, or a JDK or JRE home, or {@code null} for the
+	 *               runtime Condor is running on
+	 */
+	public static void write(Path source, Path output) throws IOException {
+		if (source == null) {
+			source = Paths.get(System.getProperty("java.home"));
+		}
+
+		ClassSource classSource = Libraries.createJre(source);
+
+		try {
+			classSource.open();
+			write(classSource, output);
+		} finally {
+			classSource.close();
+		}
+	}
+
+	/**
+	 * Write a hierarchy index of all classes the given source can provide.
+	 * The source must be open.
+	 */
+	public static void write(ClassSource source, Path output) throws IOException {
+		List<ClassInstance> classes = new ArrayList<>();
+
+		for (String name : source.getClassNames()) {
+			ClassInstance cls = source.getClass(name);
+
+			if (cls != null) {
+				classes.add(cls);
+			}
+		}
+
+		write(classes, output);
+	}
+
+	private static void write(List<ClassInstance> classes, Path output) throws IOException {
+		// sort by name bytes, to match the binary search
+		classes.sort((c1, c2) -> compareBytes(c1.getName().getBytes(StandardCharsets.UTF_8), c2.getName().getBytes(StandardCharsets.UTF_8)));
+
+		Map<String, Integer> stringIds = new HashMap<>();
+		List<byte[]> strings = new ArrayList<>();
+		List<Integer> interfaces = new ArrayList<>();
+		int[] classData = new int[CLASS_SIZE * classes.size()];
+
+		for (int i = 0; i < classes.size(); i++) {
+			ClassInstance cls = classes.get(i);
+			String superName = cls.getSuperClassName();
+			String[] interfaceNames = cls.getInterfaceNamesInternal();
+
+			classData[CLASS_SIZE * i] = getStringId(stringIds, strings, cls.getName());
+			classData[CLASS_SIZE * i + 1] = cls.getAccess();
+			classData[CLASS_SIZE * i + 2] = (superName == null) ? -1 : getStringId(stringIds, strings, superName);
+			classData[CLASS_SIZE * i + 3] = interfaces.size();
+			classData[CLASS_SIZE * i + 4] = interfaceNames.length;
+
+			for (String interfaceName : interfaceNames) {
+				interfaces.add(getStringId(stringIds, strings, interfaceName));
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(strings.size());
+			out.writeInt(classes.size());
+			out.writeInt(interfaces.size());
+
+			int offset = 0;
+			for (byte[] string : strings) {
+				out.writeInt(offset);
+				offset += string.length;
+			}
+			out.writeInt(offset);
+
+			for (int value : classData) {
+				out.writeInt(value);
+			}
+			for (int id : interfaces) {
+				out.writeInt(id);
+			}
+			for (byte[] string : strings) {
+				out.write(string);
+			}
+		}
+	}
+
+	private static int getStringId(Map<String, Integer> ids, List<byte[]> strings, String s) {
+		return ids.computeIfAbsent(s, key -> {
+			strings.add(key.getBytes(StandardCharsets.UTF_8));
+			return strings.size() - 1;
+		});
+	}
+
+	private static int compareBytes(byte[] b1, byte[] b2) {
+		for (int i = 0; i < b1.length && i < b2.length; i++) {
+			int cmp = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return b1.length - b2.length;
+	}
+}
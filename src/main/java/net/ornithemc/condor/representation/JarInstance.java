@@ -1,127 +1,341 @@
 package net.ornithemc.condor.representation;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
+import net.ornithemc.condor.util.ZipArchive;
+import net.ornithemc.condor.util.ZipArchiveWriter;
+
 public class JarInstance extends ClassSource {
 
 	private final Path path;
 	private final boolean mainJar;
 	private final Set<String> classesToRead;
+	// for each class of the main jar, the entry it is read from, which
+	// does not have to match the class name, e.g. for relocated classes
+	private final Map<String, String> entryNames;
+
+	// the jar modified classes are written to, which is
+	// the main jar itself unless an output jar is given
+	private final Path output;
+	private final boolean inPlace;
+	// for each modified class file, its new data
+	// these are only kept until the output jar is written
+	private final Map<String, ZipArchiveWriter.Deflated> classesToWrite;
+	// whether class files can be taken from the previous output jar
+	private final boolean reuseOutput;
+	// the class files to take from the previous output jar
+	private final Set<String> classesToReuse;
 
-	// the filesystem currently in use
-	// this is reused to avoid opening a new one for each class read
-	private FileSystem fs;
+	// the archive classes are read from
+	private ZipArchive archive;
+	// the output jar of a previous run, if classes can be reused from it
+	private ZipArchive previousOutput;
 
 	public JarInstance(Path path, boolean mainJar) throws IOException {
+		this(path, mainJar, null, false);
+	}
+
+	/**
+	 * Create a main jar instance that writes modified classes to a new jar at
+	 * the given output path, rather than modifying the jar in place.
+	 */
+	public JarInstance(Path path, Path output) throws IOException {
+		this(path, true, output, false);
+	}
+
+	/**
+	 * Create a main jar instance that writes modified classes to a new jar at
+	 * the given output path. If reuse of the output is enabled, class files
+	 * can be taken from the jar already at the output path, see
+	 * {@link #reuseClass}.
+	 */
+	public JarInstance(Path path, Path output, boolean reuseOutput) throws IOException {
+		this(path, true, output, reuseOutput);
+	}
+
+	private JarInstance(Path path, boolean mainJar, Path output, boolean reuseOutput) throws IOException {
 		this.path = path;
 		this.mainJar = mainJar;
-		this.classesToRead = new HashSet<>();
+		this.classesToRead = ConcurrentHashMap.newKeySet();
+		this.entryNames = new HashMap<>();
+
+		this.inPlace = mainJar && (output == null);
+		this.output = this.inPlace ? path : output;
+		this.classesToWrite = new ConcurrentHashMap<>();
+		this.reuseOutput = reuseOutput;
+		this.classesToReuse = ConcurrentHashMap.newKeySet();
 	}
 
 	@Override
 	public void open() throws IOException {
-		if (this.fs == null) {
-			this.fs = FileSystems.newFileSystem(this.path, (ClassLoader) null);
+		if (this.archive == null) {
+			// the main jar may be replaced once the output is written,
+			// so it must not be mapped
+			this.archive = ZipArchive.open(this.path, !this.mainJar);
+		}
+		if (this.previousOutput == null && this.reuseOutput && Files.exists(this.output)) {
+			// the output jar is replaced once the new one is written,
+			// so it must not be mapped
+			this.previousOutput = ZipArchive.open(this.output, false);
 		}
-
 		this.findClasses();
 	}
 
 	@Override
 	public void close() throws IOException {
-		if (this.fs != null) {
-			this.fs.close();
-			this.fs = null;
+		try {
+			// the main jar is only replaced if any classes were modified
+			if (this.archive != null && this.output != null && !(this.inPlace && this.classesToWrite.isEmpty())) {
+				this.writeOutput();
+			}
+		} finally {
+			this.release();
 		}
+	}
+
+	/**
+	 * Close this jar without writing the output jar, so that the output of a
+	 * previous run, or the main jar when modified in place, is left as it is.
+	 */
+	@Override
+	public void abort() throws IOException {
+		this.release();
+	}
+
+	private void release() throws IOException {
+		try {
+			if (this.archive != null) {
+				this.archive.close();
+				this.archive = null;
+			}
+			if (this.previousOutput != null) {
+				this.previousOutput.close();
+				this.previousOutput = null;
+			}
+		} finally {
+			this.classesToRead.clear();
+			this.entryNames.clear();
+			this.classesToWrite.clear();
+			this.classesToReuse.clear();
 
-		this.classesToRead.clear();
+			super.close();
+		}
 	}
 
 	@Override
 	public ClassInstance getClass(String name) throws IOException {
-		if (this.classesToRead.remove(name)) {
-			this.readClass(name);
+		ClassInstance cls = super.getClass(name);
+
+		if (cls == null) {
+			if (this.classesToRead.contains(name)) {
+				synchronized (this.getLock(name)) {
+					// only remove the class once it has been read, so that
+					// concurrent lookups never miss it
+					if (this.classesToRead.contains(name)) {
+						this.readClass(name);
+						this.classesToRead.remove(name);
+					}
+				}
+			}
+
+			cls = super.getClass(name);
 		}
 
-		return super.getClass(name);
+		return cls;
+	}
+
+	@Override
+	public Collection<String> getClassNames() {
+		Set<String> names = new HashSet<>(super.getClassNames());
+		names.addAll(this.classesToRead);
+
+		return names;
 	}
 
 	@Override
 	public void writeClass(String name) throws IOException {
-		Path classFile = this.getClassFile(name);
+		byte[] bytes = this.writeNode(name);
 
-		if (classFile != null) {
-			ClassInstance cls = this.getClass(name);
-			ClassNode node = cls.getNode();
+		if (bytes != null) {
+			this.writeClass(name, bytes);
+		}
+	}
 
-			if (node != null) {
-				ClassWriter writer = new ClassWriter(0);
-				node.accept(writer);
+	@Override
+	public void writeClass(String name, byte[] bytes) throws IOException {
+		// libraries are never written to
+		if (this.output == null) {
+			return;
+		}
 
-				Files.write(classFile, writer.toByteArray());
-			}
+		String entryName = this.getEntryName(name);
+
+		if (entryName != null && this.archive.getEntry(entryName) != null) {
+			// compress right away to keep memory usage down
+			// until the output jar is written
+			this.classesToWrite.put(entryName, ZipArchiveWriter.deflate(bytes));
 		}
 	}
 
-	private void findClasses() throws IOException {
-		for (Path root : this.fs.getRootDirectories()) {
-			try (Stream<Path> classFiles = Files.find(root, Integer.MAX_VALUE, (p, a) -> a.isRegularFile() && p.toString().endsWith(".class"))) {
-				classFiles.forEach(classFile -> {
-					Path relativePath = root.relativize(classFile);
-					String pathName = relativePath.toString();
-					String className = pathName.substring(0, pathName.length() - ".class".length());
-
-					if (JarInstance.this.mainJar) {
-						// for the main jar, all classes need to be parsed anyway
-						// for the local variable table generation
-						try (InputStream is = Files.newInputStream(classFile)) {
-							JarInstance.this.readClass(is, JarInstance.this.mainJar);
-						} catch (IOException e) {
-							throw new UncheckedIOException(e);
-						}
+	@Override
+	public boolean reuseClass(String name) throws IOException {
+		String entryName = this.getEntryName(name);
+
+		if (entryName == null || this.previousOutput == null || this.previousOutput.getEntry(entryName) == null) {
+			return false;
+		}
+
+		this.classesToReuse.add(entryName);
+
+		return true;
+	}
+
+	private byte[] writeNode(String name) throws IOException {
+		ClassInstance cls = this.getClass(name);
+		ClassNode node = cls.getNode();
+
+		if (node == null) {
+			return null;
+		}
+
+		ClassWriter writer = new ClassWriter(0);
+		node.accept(writer);
+
+		return writer.toByteArray();
+	}
+
+	private void writeOutput() throws IOException {
+		Path output = this.output.toAbsolutePath();
+		// write to a temporary file first so the output
+		// is never left behind half-written
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+
+		try {
+			ZipArchiveWriter writer = new ZipArchiveWriter(tmp);
+
+			try {
+				for (ZipArchive.Entry entry : this.archive.getEntries()) {
+					ZipArchiveWriter.Deflated data = this.classesToWrite.get(entry.getName());
+
+					if (data != null) {
+						writer.writeEntry(entry, data);
+					} else if (this.classesToReuse.contains(entry.getName())) {
+						// reused entries are copied as they are from the previous output
+						writer.copyEntry(this.previousOutput, this.previousOutput.getEntry(entry.getName()));
 					} else {
-						if (!JarInstance.this.hasClass(className)) {
-							JarInstance.this.classesToRead.add(className);
-						}
+						// unmodified entries are copied as they are
+						writer.copyEntry(this.archive, entry);
 					}
-				});
-			} catch (UncheckedIOException e) {
-				throw e.getCause();
+				}
+			} catch (Throwable t) {
+				// do not finish an archive that is missing entries
+				writer.abort();
+				throw t;
+			}
+
+			writer.close();
+
+			// the previous output, or the main jar itself, is about to be replaced
+			if (this.previousOutput != null) {
+				this.previousOutput.close();
+				this.previousOutput = null;
+			}
+			if (this.inPlace) {
+				this.archive.close();
+				this.archive = null;
+			}
+
+			try {
+				Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
 			}
+		} finally {
+			Files.deleteIfExists(tmp);
 		}
 	}
 
-	private void readClass(String name) throws IOException {
-		Path classFile = this.getClassFile(name);
+	private void findClasses() throws IOException {
+		for (ZipArchive.Entry entry : this.archive.getEntries()) {
+			String entryName = entry.getName();
+
+			if (entry.isDirectory() || !entryName.endsWith(".class")) {
+				continue;
+			}
+			// versioned classes in multi-release jars share their name with
+			// the base class, and must not take its place
+			if (entryName.startsWith("META-INF/")) {
+				continue;
+			}
 
-		if (classFile != null) {
-			try (InputStream is = Files.newInputStream(classFile)) {
-				this.readClass(is, this.mainJar);
+			if (this.mainJar) {
+				// for the main jar, the class headers are needed right away
+				// for the class index, but the full class trees are only read
+				// when the class is processed
+				ClassReader reader = new ClassReader(this.archive.read(entry));
+				String className = reader.getClassName();
+				String previousEntryName = this.entryNames.get(className);
+
+				// several entries may declare the same class, e.g. shaded
+				// copies, in which case the one at the matching path is used
+				if (previousEntryName == null || (!previousEntryName.equals(className + ".class") && entryName.equals(className + ".class"))) {
+					this.entryNames.put(className, entryName);
+					this.readClass(reader, false);
+				}
+			} else {
+				String className = entryName.substring(0, entryName.length() - ".class".length());
+
+				if (!this.hasClass(className)) {
+					this.classesToRead.add(className);
+				}
 			}
 		}
 	}
 
-	private Path getClassFile(String name) {
-		for (Path root : fs.getRootDirectories()) {
-			Path classFile = root.resolve(name + ".class");
+	private void readClass(String name) throws IOException {
+		ZipArchive.Entry entry = this.archive.getEntry(name + ".class");
 
-			if (Files.exists(classFile) && Files.isRegularFile(classFile)) {
-				return classFile;
-			}
+		if (entry != null) {
+			this.readClass(this.archive.read(entry), false);
 		}
+	}
+
+	@Override
+	protected byte[] readClassFile(String name) throws IOException {
+		String entryName = this.mainJar ? this.getEntryName(name) : null;
+
+		if (entryName == null) {
+			return null;
+		}
+
+		ZipArchive.Entry entry = this.archive.getEntry(entryName);
+
+		if (entry == null) {
+			return null;
+		}
+
+		return this.archive.read(entry);
+	}
 
-		return null;
+	/**
+	 * @return the name of the entry the given class is read from, or
+	 *         {@code null} if the main jar does not declare the class
+	 */
+	private String getEntryName(String name) {
+		return this.mainJar ? this.entryNames.get(name) : (name + ".class");
 	}
 }
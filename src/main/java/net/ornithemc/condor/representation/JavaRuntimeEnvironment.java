@@ -2,40 +2,77 @@ package net.ornithemc.condor.representation;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JavaRuntimeEnvironment extends ClassSource {
 
+	/**
+	 * The class path resource of the JDK hierarchy index that may be bundled
+	 * with Condor. If present, classes are looked up in it before falling
+	 * back to the runtime Condor is running on.
+	 */
+	public static final String BUNDLED_INDEX = "/net/ornithemc/condor/jdk" + HierarchyIndex.EXTENSION;
+
 	// fast lookup for classes that can't be found in system resources
-	private final Set<String> unknownClasses = new HashSet<>();
+	private final Set<String> unknownClasses = ConcurrentHashMap.newKeySet();
+
+	private HierarchyIndex index;
 
 	@Override
-	public ClassInstance getClass(String name) throws IOException {
-		if (this.unknownClasses.contains(name)) {
-			return null;
+	public void open() throws IOException {
+		if (this.index == null && JavaRuntimeEnvironment.class.getResource(BUNDLED_INDEX) != null) {
+			HierarchyIndex index = HierarchyIndex.fromResource(BUNDLED_INDEX);
+			index.open();
+
+			this.index = index;
 		}
+	}
 
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.index != null) {
+				this.index.close();
+				this.index = null;
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public ClassInstance getClass(String name) throws IOException {
 		ClassInstance cls = super.getClass(name);
 
-		if (cls == null) {
-			this.readClass(name);
+		if (cls == null && this.index != null) {
+			cls = this.index.getClass(name);
 		}
+		if (cls == null && !this.unknownClasses.contains(name)) {
+			synchronized (this.getLock(name)) {
+				// another thread may have read the class in the meantime
+				cls = super.getClass(name);
+
+				if (cls == null && !this.unknownClasses.contains(name)) {
+					this.readClass(name);
 
-		cls = super.getClass(name);
+					cls = super.getClass(name);
 
-		if (cls == null) {
-			this.unknownClasses.add(name);
+					if (cls == null) {
+						this.unknownClasses.add(name);
+					}
+				}
+			}
 		}
 
 		return cls;
 	}
 
 	private void readClass(String name) throws IOException {
-		InputStream is = ClassLoader.getSystemResourceAsStream(name + ".class");
-
-		if (is != null) {
-			this.readClass(is, false);
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+			if (is != null) {
+				this.readClass(is, false);
+			}
 		}
 	}
 }
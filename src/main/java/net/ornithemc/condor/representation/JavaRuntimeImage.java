@@ -0,0 +1,138 @@
+package net.ornithemc.condor.representation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The classes of a JDK 9+ runtime image, read from its {@code jrt:/} file
+ * system. The names of all classes are indexed once when the image is opened,
+ * and classes are read on demand.
+ */
+public class JavaRuntimeImage extends ClassSource {
+
+	private final Path home;
+
+	// for each class in the image, its class file
+	// this is built once the image is opened and not modified afterwards
+	private Map<String, Path> classFiles;
+
+	private FileSystem fs;
+	private URLClassLoader loader;
+
+	/**
+	 * @param home the {@code java.home} directory of the JDK
+	 */
+	public JavaRuntimeImage(Path home) {
+		this.home = home;
+	}
+
+	/**
+	 * @return whether the given directory is the home of a JDK 9+ runtime image
+	 */
+	public static boolean isImage(Path home) {
+		return Files.isRegularFile(home.resolve("lib").resolve("modules"));
+	}
+
+	@Override
+	public void open() throws IOException {
+		if (this.fs == null) {
+			Map<String, String> env = Collections.singletonMap("java.home", this.home.toString());
+
+			try {
+				this.fs = FileSystems.newFileSystem(URI.create("jrt:/"), env);
+			} catch (ProviderNotFoundException e) {
+				// the jrt file system is not built into java 8,
+				// but the image ships with its own provider
+				URL jrtfs = this.home.resolve("lib").resolve("jrt-fs.jar").toUri().toURL();
+
+				this.loader = new URLClassLoader(new URL[] { jrtfs });
+				this.fs = FileSystems.newFileSystem(URI.create("jrt:/"), env, this.loader);
+			}
+		}
+		if (this.classFiles == null) {
+			this.classFiles = this.findClasses();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.fs != null) {
+				this.fs.close();
+			}
+		} finally {
+			if (this.loader != null) {
+				this.loader.close();
+			}
+
+			this.fs = null;
+			this.loader = null;
+			this.classFiles = null;
+
+			super.close();
+		}
+	}
+
+	private Map<String, Path> findClasses() throws IOException {
+		Map<String, Path> classFiles = new HashMap<>();
+
+		try (DirectoryStream<Path> modules = Files.newDirectoryStream(this.fs.getPath("/modules"))) {
+			for (Path module : modules) {
+				try (Stream<Path> files = Files.walk(module)) {
+					files.forEach(file -> {
+						String entryName = module.relativize(file).toString();
+
+						if (entryName.endsWith(".class") && !entryName.equals("module-info.class")) {
+							String className = entryName.substring(0, entryName.length() - ".class".length());
+							// packages are never split across modules, but be safe
+							classFiles.putIfAbsent(className, file);
+						}
+					});
+				}
+			}
+		}
+
+		return classFiles;
+	}
+
+	@Override
+	public ClassInstance getClass(String name) throws IOException {
+		ClassInstance cls = super.getClass(name);
+
+		if (cls == null) {
+			Path classFile = this.classFiles.get(name);
+
+			if (classFile != null) {
+				synchronized (this.getLock(name)) {
+					// another thread may have read the class in the meantime
+					cls = super.getClass(name);
+
+					if (cls == null) {
+						this.readClass(Files.readAllBytes(classFile), false);
+						cls = super.getClass(name);
+					}
+				}
+			}
+		}
+
+		return cls;
+	}
+
+	@Override
+	public Collection<String> getClassNames() {
+		return Collections.unmodifiableSet(this.classFiles.keySet());
+	}
+}
@@ -0,0 +1,156 @@
+package net.ornithemc.condor.representation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of a classpath besides the main jar: the Java runtime environment
+ * and the libraries. It can be shared between several classpaths, in which
+ * case it is opened and closed by whoever created it, and classes read from
+ * it are reused by all of those classpaths.
+ */
+public class Libraries implements Closeable {
+
+	private final ClassSource jre;
+	private final ClassSource[] libs;
+	// whether the sources are opened and closed along with these libraries
+	private final boolean ownsSources;
+
+	// for each class in the libraries, the source it is read from
+	// this is built once all sources are open and not modified afterwards
+	private Map<String, ClassSource> index;
+
+	public Libraries(List<Path> libs) throws IOException {
+		this(libs, null);
+	}
+
+	/**
+	 * Create libraries that read JDK classes from the given runtime, rather
+	 * than from the runtime Condor is running on.
+	 *
+	 * @param jre a JDK or JRE home, or an rt.jar, or a hierarchy index, or
+	 *            {@code null} to use the runtime Condor is running on
+	 */
+	public Libraries(List<Path> libs, Path jre) throws IOException {
+		this.jre = createJre(jre);
+		this.libs = new ClassSource[libs.size()];
+		for (int i = 0; i < libs.size(); i++) {
+			this.libs[i] = createLibrary(libs.get(i));
+		}
+		this.ownsSources = true;
+	}
+
+	/**
+	 * Create libraries from sources that are already open, and that will be
+	 * closed by the caller once these libraries are no longer used.
+	 */
+	public Libraries(ClassSource jre, List<? extends ClassSource> libs) {
+		this.jre = jre;
+		this.libs = libs.toArray(new ClassSource[0]);
+		this.ownsSources = false;
+	}
+
+	static ClassSource createLibrary(Path lib) throws IOException {
+		if (HierarchyIndex.isIndex(lib)) {
+			return new HierarchyIndex(lib);
+		}
+
+		return new JarInstance(lib, false);
+	}
+
+	static ClassSource createJre(Path jre) throws IOException {
+		if (jre == null) {
+			return new JavaRuntimeEnvironment();
+		}
+		if (HierarchyIndex.isIndex(jre)) {
+			return new HierarchyIndex(jre);
+		}
+		if (Files.isRegularFile(jre)) {
+			// an rt.jar or similar
+			return new JarInstance(jre, false);
+		}
+		if (JavaRuntimeImage.isImage(jre)) {
+			return new JavaRuntimeImage(jre);
+		}
+
+		// java 8 and older keep their classes in rt.jar
+		for (Path rtJar : new Path[] { jre.resolve("jre/lib/rt.jar"), jre.resolve("lib/rt.jar") }) {
+			if (Files.isRegularFile(rtJar)) {
+				return new JarInstance(rtJar, false);
+			}
+		}
+
+		throw new IOException("no java runtime found at " + jre);
+	}
+
+	public void open() throws IOException {
+		if (this.ownsSources) {
+			this.jre.open();
+			for (ClassSource lib : this.libs) {
+				lib.open();
+			}
+		}
+
+		this.buildIndex();
+	}
+
+	private void buildIndex() {
+		Map<String, ClassSource> index = new HashMap<>();
+
+		// earlier libraries take precedence over later ones
+		for (ClassSource lib : this.libs) {
+			for (String name : lib.getClassNames()) {
+				index.putIfAbsent(name, lib);
+			}
+		}
+
+		this.index = index;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.ownsSources) {
+			this.jre.close();
+			for (ClassSource lib : this.libs) {
+				lib.close();
+			}
+		}
+
+		this.index = null;
+	}
+
+	public ClassInstance getClass(String name) throws IOException {
+		ClassSource source = this.index.get(name);
+
+		if (source != null) {
+			ClassInstance cls = source.getClass(name);
+
+			if (cls != null) {
+				return cls;
+			}
+
+			// the class file did not declare the expected class,
+			// fall back to checking each source in order
+			return this.findClass(name);
+		}
+
+		return this.jre.getClass(name);
+	}
+
+	private ClassInstance findClass(String name) throws IOException {
+		for (ClassSource lib : this.libs) {
+			ClassInstance cls = lib.getClass(name);
+
+			if (cls != null) {
+				return cls;
+			}
+		}
+
+		return this.jre.getClass(name);
+	}
+}
@@ -0,0 +1,90 @@
+package net.ornithemc.condor.representation;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A main class source backed by class files in memory. Modified classes are
+ * kept in memory as well, rather than being written anywhere.
+ */
+public class MemoryClassSource extends ClassSource {
+
+	// the given class files, by the names of the classes they declare
+	private final Map<String, byte[]> classFiles;
+	// for each modified class, its new class file
+	private final Map<String, byte[]> classesWritten;
+
+	/**
+	 * @throws IllegalArgumentException if several class files declare the
+	 *         same class
+	 */
+	public MemoryClassSource(Collection<byte[]> classFiles) {
+		this.classFiles = new LinkedHashMap<>();
+		this.classesWritten = new ConcurrentHashMap<>();
+
+		for (byte[] classFile : classFiles) {
+			String name = new ClassReader(classFile).getClassName();
+
+			if (this.classFiles.putIfAbsent(name, classFile) != null) {
+				throw new IllegalArgumentException("duplicate class " + name);
+			}
+		}
+	}
+
+	@Override
+	public void open() throws IOException {
+		for (byte[] classFile : this.classFiles.values()) {
+			this.readClass(classFile, false);
+		}
+	}
+
+	@Override
+	protected byte[] readClassFile(String name) throws IOException {
+		return this.classFiles.get(name);
+	}
+
+	@Override
+	public void writeClass(String name) throws IOException {
+		ClassInstance cls = this.getClass(name);
+		ClassNode node = (cls == null) ? null : cls.getNode();
+
+		if (node != null) {
+			ClassWriter writer = new ClassWriter(0);
+			node.accept(writer);
+
+			this.writeClass(name, writer.toByteArray());
+		}
+	}
+
+	@Override
+	public void writeClass(String name, byte[] bytes) throws IOException {
+		if (this.classFiles.containsKey(name)) {
+			this.classesWritten.put(name, bytes);
+		}
+	}
+
+	/**
+	 * @return all class files, by the internal names of the classes they
+	 *         declare, with modified classes replaced by their new class files
+	 */
+	public Map<String, byte[]> getClassFiles() {
+		Map<String, byte[]> classFiles = new LinkedHashMap<>();
+
+		for (Map.Entry<String, byte[]> entry : this.classFiles.entrySet()) {
+			String name = entry.getKey();
+			byte[] classFile = this.classesWritten.get(name);
+
+			classFiles.put(name, (classFile == null) ? entry.getValue() : classFile);
+		}
+
+		return Collections.unmodifiableMap(classFiles);
+	}
+}
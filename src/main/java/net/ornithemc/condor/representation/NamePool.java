@@ -0,0 +1,81 @@
+package net.ornithemc.condor.representation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of the class names read by a class source. The same super class and
+ * interface names occur in the headers of many classes, and each read class
+ * file would otherwise hold its own copies of them, as well as its own arrays
+ * of interface names.
+ *
+ * <p>
+ * The pool lives as long as its source is open. It is cleared when the source
+ * is closed, so that sources that are kept around once closed, such as the
+ * libraries shared by the daemon, do not hold on to names no longer in use.
+ * Classes read before that keep the names they were given.
+ */
+class NamePool {
+
+	private static final String[] NO_NAMES = new String[0];
+
+	private final Map<String, String> names;
+	// interface name arrays, by their contents
+	private final Map<List<String>, String[]> nameArrays;
+
+	NamePool() {
+		this.names = new ConcurrentHashMap<>();
+		this.nameArrays = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return the pooled copy of the given name
+	 */
+	String get(String name) {
+		if (name == null) {
+			return null;
+		}
+
+		String pooled = this.names.putIfAbsent(name, name);
+		return (pooled == null) ? name : pooled;
+	}
+
+	/**
+	 * @return the pooled copy of the given names, which is shared and must
+	 *         not be modified
+	 */
+	String[] get(String[] names) {
+		if (names == null || names.length == 0) {
+			return NO_NAMES;
+		}
+
+		String[] pooled = this.nameArrays.get(Arrays.asList(names));
+
+		if (pooled == null) {
+			// copy the array, the given one is not ours to share
+			String[] copy = new String[names.length];
+
+			for (int i = 0; i < names.length; i++) {
+				copy[i] = this.get(names[i]);
+			}
+
+			pooled = this.nameArrays.putIfAbsent(Arrays.asList(copy), copy);
+
+			if (pooled == null) {
+				pooled = copy;
+			}
+		}
+
+		return pooled;
+	}
+
+	/**
+	 * Remove all names from this pool.
+	 */
+	void clear() {
+		this.names.clear();
+		this.nameArrays.clear();
+	}
+}
@@ -0,0 +1,212 @@
+package net.ornithemc.condor.representation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.Type;
+
+import net.ornithemc.condor.util.ASM;
+
+/**
+ * A table of canonical {@link Type} instances for object, array and method
+ * descriptors. Each descriptor is only parsed once, and types handed out by
+ * the same table can usually be compared by identity. Types from elsewhere,
+ * such as those in constant pools, are not canonical, so identity checks
+ * must still fall back to {@link Type#equals}.
+ *
+ * <p>
+ * Each classpath has its own table, which may be used by several threads.
+ */
+public class TypeTable {
+
+	// object types by internal name
+	private final Map<String, Type> objectTypes;
+	// field types, including array types, by descriptor
+	private final Map<String, Type> types;
+	// method types by descriptor
+	private final Map<String, MethodType> methodTypes;
+	// array and component types of field types, by type
+	private final Map<Type, ArrayLinks> arrayLinks;
+
+	public TypeTable() {
+		this.objectTypes = new ConcurrentHashMap<>();
+		this.types = new ConcurrentHashMap<>();
+		this.methodTypes = new ConcurrentHashMap<>();
+		this.arrayLinks = new ConcurrentHashMap<>();
+
+		for (Type type : new Type[] { ASM.NULL_TYPE, ASM.OBJECT_TYPE, ASM.STRING_TYPE, ASM.THROWABLE_TYPE, ASM.CLASS_TYPE, ASM.METHOD_TYPE }) {
+			this.objectTypes.put(type.getInternalName(), type);
+		}
+	}
+
+	/**
+	 * @return the object type for the given internal name, or the array type
+	 *         if the internal name is an array descriptor
+	 */
+	public Type getObjectType(String internalName) {
+		if (internalName.charAt(0) == '[') {
+			return this.getType(internalName);
+		}
+
+		Type type = this.objectTypes.get(internalName);
+
+		if (type == null) {
+			type = Type.getObjectType(internalName);
+
+			// another thread may have added the type in the meantime
+			Type prev = this.objectTypes.putIfAbsent(internalName, type);
+
+			if (prev != null) {
+				type = prev;
+			}
+		}
+
+		return type;
+	}
+
+	/**
+	 * @return the type for the given field descriptor
+	 */
+	public Type getType(String descriptor) {
+		Type type = this.types.get(descriptor);
+
+		if (type == null) {
+			if (descriptor.charAt(0) == 'L') {
+				// share object types with those looked up by internal name
+				type = this.getObjectType(descriptor.substring(1, descriptor.length() - 1));
+			} else {
+				type = Type.getType(descriptor);
+			}
+
+			Type prev = this.types.putIfAbsent(descriptor, type);
+
+			if (prev != null) {
+				type = prev;
+			}
+		}
+
+		return type;
+	}
+
+	/**
+	 * @return the array type with the given element type and dimensions
+	 */
+	public Type getArrayType(Type elementType, int dimensions) {
+		Type type = elementType;
+
+		for (int i = 0; i < dimensions; i++) {
+			ArrayLinks links = this.getArrayLinks(type);
+			Type arrayType = links.arrayType;
+
+			if (arrayType == null) {
+				links.arrayType = arrayType = this.getType("[" + type.getDescriptor());
+			}
+
+			type = arrayType;
+		}
+
+		return type;
+	}
+
+	/**
+	 * @return the component type of the given array type, which has one
+	 *         dimension less
+	 */
+	public Type getComponentType(Type arrayType) {
+		ArrayLinks links = this.getArrayLinks(arrayType);
+		Type componentType = links.componentType;
+
+		if (componentType == null) {
+			links.componentType = componentType = this.getType(arrayType.getDescriptor().substring(1));
+		}
+
+		return componentType;
+	}
+
+	private ArrayLinks getArrayLinks(Type type) {
+		ArrayLinks links = this.arrayLinks.get(type);
+
+		if (links == null) {
+			links = new ArrayLinks();
+
+			// another thread may have added the links in the meantime
+			ArrayLinks prev = this.arrayLinks.putIfAbsent(type, links);
+
+			if (prev != null) {
+				links = prev;
+			}
+		}
+
+		return links;
+	}
+
+	/**
+	 * @return the argument types of the given method descriptor; the array
+	 *         is shared and must not be modified
+	 */
+	public Type[] getArgumentTypes(String methodDescriptor) {
+		return this.getMethodType(methodDescriptor).argumentTypes;
+	}
+
+	/**
+	 * @return the return type of the given method descriptor
+	 */
+	public Type getReturnType(String methodDescriptor) {
+		return this.getMethodType(methodDescriptor).returnType;
+	}
+
+	private MethodType getMethodType(String descriptor) {
+		MethodType type = this.methodTypes.get(descriptor);
+
+		if (type == null) {
+			Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+
+			for (int i = 0; i < argumentTypes.length; i++) {
+				argumentTypes[i] = this.intern(argumentTypes[i]);
+			}
+
+			type = new MethodType(argumentTypes, this.intern(Type.getReturnType(descriptor)));
+
+			MethodType prev = this.methodTypes.putIfAbsent(descriptor, type);
+
+			if (prev != null) {
+				type = prev;
+			}
+		}
+
+		return type;
+	}
+
+	private Type intern(Type type) {
+		switch (type.getSort()) {
+		case Type.OBJECT:
+			return this.getObjectType(type.getInternalName());
+		case Type.ARRAY:
+			return this.getType(type.getDescriptor());
+		default:
+			// primitive types are already canonical
+			return type;
+		}
+	}
+
+	/**
+	 * The array and component types of a type, found on first use. Both are
+	 * canonical, so racing threads can only ever store the same types.
+	 */
+	private static class ArrayLinks {
+
+		volatile Type arrayType;
+		volatile Type componentType;
+	}
+
+	private static class MethodType {
+
+		final Type[] argumentTypes;
+		final Type returnType;
+
+		MethodType(Type[] argumentTypes, Type returnType) {
+			this.argumentTypes = argumentTypes;
+			this.returnType = returnType;
+		}
+	}
+}
@@ -19,17 +19,6 @@ public class ASM implements Opcodes {
 	public static final Type CLASS_TYPE = Type.getObjectType("java/lang/Class");
 	public static final Type METHOD_TYPE = Type.getObjectType("java/lang/invoke/MethodType");
 
-	public static Type getArrayType(Type elementType, int dimensions) {
-		StringBuilder sb = new StringBuilder();
-
-		for (int i = 0; i < dimensions; i++) {
-			sb.append('[');
-		}
-		sb.append(elementType.getDescriptor());
-
-		return Type.getType(sb.toString());
-	}
-
 	public static Type getIntType(Type type1, Type type2) {
 		if (type1 == type2) {
 			return type1;
@@ -0,0 +1,444 @@
+package net.ornithemc.condor.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a zip archive that is indexed from its central directory.
+ * Entry data is read directly from the entry's offset in the archive, from a
+ * memory-mapped buffer if possible, and can be read from multiple threads.
+ */
+public class ZipArchive implements Closeable {
+
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_HEADER_SIGNATURE = 0x06054b50;
+	static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+	static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_HEADER_SIZE = 22;
+	static final int ZIP64_END_HEADER_SIZE = 56;
+	static final int ZIP64_END_LOCATOR_SIZE = 20;
+
+	static final int ZIP64_EXTRA_ID = 0x0001;
+
+	static final int METHOD_STORED = 0;
+	static final int METHOD_DEFLATED = 8;
+
+	static final int FLAG_ENCRYPTED = 0x0001;
+	static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+	static final int FLAG_UTF8 = 0x0800;
+
+	// the encoding of entry names without the utf-8 flag
+	private static final Charset CP437 = Charset.forName("IBM437");
+
+	private final Path path;
+	private final FileChannel channel;
+	// the mapped archive, or null if it could not be mapped
+	// or once the archive is closed
+	private volatile ByteBuffer buffer;
+
+	private final Map<String, Entry> entries;
+
+	private ZipArchive(Path path, FileChannel channel, ByteBuffer buffer) {
+		this.path = path;
+		this.channel = channel;
+		this.buffer = buffer;
+
+		this.entries = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Open the zip archive at the given path and read its central directory.
+	 *
+	 * @param map whether the archive should be memory-mapped. Mapped archives
+	 *            are unmapped when closed where the runtime allows it, but
+	 *            otherwise stay mapped until garbage collected, so archives
+	 *            that are replaced while open should not be mapped.
+	 */
+	public static ZipArchive open(Path path, boolean map) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			ByteBuffer buffer = null;
+
+			if (map && channel.size() <= Integer.MAX_VALUE) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+
+			ZipArchive archive = new ZipArchive(path, channel, buffer);
+			archive.readCentralDirectory();
+
+			return archive;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Close this archive and unmap its buffer. The archive must not be read
+	 * from while it is being closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		ByteBuffer buffer = this.buffer;
+		this.buffer = null;
+
+		try {
+			this.channel.close();
+		} finally {
+			if (buffer != null) {
+				unmap(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Release the memory mapping of the given buffer right away, rather than
+	 * once it is garbage collected, so that the file is no longer held open.
+	 * This is not supported by any public api, so if the runtime does not
+	 * allow it, the buffer is left to the garbage collector.
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+			try {
+				// java 9 and later
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				// java 8
+				Method getCleaner = buffer.getClass().getMethod("cleaner");
+				getCleaner.setAccessible(true);
+				Object cleaner = getCleaner.invoke(buffer);
+
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// left to the garbage collector
+		}
+	}
+
+	public Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @return all entries in this archive, in central directory order
+	 */
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(this.entries.values());
+	}
+
+	public Entry getEntry(String name) {
+		return this.entries.get(name);
+	}
+
+	/**
+	 * Read the uncompressed data of the given entry.
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		byte[] data = this.readRaw(entry);
+
+		switch (entry.method) {
+		case METHOD_STORED:
+			return data;
+		case METHOD_DEFLATED:
+			return inflate(entry, data);
+		default:
+			throw new ZipException("unsupported compression method " + entry.method + " for entry " + entry.name + " in " + this.path);
+		}
+	}
+
+	/**
+	 * Read the data of the given entry as it is stored in the archive,
+	 * without decompressing it.
+	 */
+	public byte[] readRaw(Entry entry) throws IOException {
+		if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+			throw new ZipException("encrypted entry " + entry.name + " in " + this.path);
+		}
+		if (entry.compressedSize > Integer.MAX_VALUE) {
+			throw new ZipException("entry " + entry.name + " in " + this.path + " is too large");
+		}
+
+		byte[] data = new byte[(int) entry.compressedSize];
+		this.read(this.getDataOffset(entry), data, 0, data.length);
+
+		return data;
+	}
+
+	private long getDataOffset(Entry entry) throws IOException {
+		long offset = entry.dataOffset;
+
+		if (offset < 0) {
+			byte[] header = new byte[LOCAL_HEADER_SIZE];
+			this.read(entry.localHeaderOffset, header, 0, header.length);
+
+			if (getInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+				throw new ZipException("invalid local header for entry " + entry.name + " in " + this.path);
+			}
+
+			int nameLength = getShort(header, 26);
+			int extraLength = getShort(header, 28);
+
+			// the data offset is the same for every thread that computes it
+			offset = entry.dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+		}
+
+		return offset;
+	}
+
+	private static byte[] inflate(Entry entry, byte[] compressed) throws IOException {
+		if (entry.size > Integer.MAX_VALUE) {
+			throw new ZipException("entry " + entry.name + " is too large");
+		}
+
+		byte[] data = new byte[(int) entry.size];
+		Inflater inflater = new Inflater(true);
+
+		try {
+			inflater.setInput(compressed);
+
+			int size = 0;
+
+			while (!inflater.finished() && size < data.length) {
+				int n = inflater.inflate(data, size, data.length - size);
+
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new ZipException("truncated data for entry " + entry.name);
+				}
+
+				size += n;
+			}
+
+			if (size != data.length) {
+				throw new ZipException("invalid size for entry " + entry.name);
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("invalid data for entry " + entry.name + ": " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+
+		return data;
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long archiveSize = this.channel.size();
+
+		// the end of central directory record is followed by
+		// a comment of at most 0xFFFF bytes
+		int tailSize = (int) Math.min(archiveSize, END_HEADER_SIZE + 0xFFFF);
+		byte[] tail = new byte[tailSize];
+		this.read(archiveSize - tailSize, tail, 0, tailSize);
+
+		int endOffset = -1;
+
+		for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+			if (getInt(tail, i) == END_HEADER_SIGNATURE) {
+				endOffset = i;
+				break;
+			}
+		}
+
+		if (endOffset < 0) {
+			throw new ZipException("no end of central directory record found in " + this.path);
+		}
+
+		long entryCount = getShort(tail, endOffset + 10);
+		long directorySize = getUnsignedInt(tail, endOffset + 12);
+		long directoryOffset = getUnsignedInt(tail, endOffset + 16);
+
+		if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			// values do not fit, read them from the zip64 end of central directory record
+			int locatorOffset = endOffset - ZIP64_END_LOCATOR_SIZE;
+
+			if (locatorOffset >= 0 && getInt(tail, locatorOffset) == ZIP64_END_LOCATOR_SIGNATURE) {
+				byte[] zip64End = new byte[ZIP64_END_HEADER_SIZE];
+				this.read(getLong(tail, locatorOffset + 8), zip64End, 0, zip64End.length);
+
+				if (getInt(zip64End, 0) != ZIP64_END_HEADER_SIGNATURE) {
+					throw new ZipException("invalid zip64 end of central directory record in " + this.path);
+				}
+
+				entryCount = getLong(zip64End, 32);
+				directorySize = getLong(zip64End, 40);
+				directoryOffset = getLong(zip64End, 48);
+			}
+		}
+
+		if (directorySize > Integer.MAX_VALUE) {
+			throw new ZipException("central directory of " + this.path + " is too large");
+		}
+
+		byte[] directory = new byte[(int) directorySize];
+		this.read(directoryOffset, directory, 0, directory.length);
+
+		for (int offset = 0, i = 0; i < entryCount; i++) {
+			if (offset + CENTRAL_HEADER_SIZE > directory.length || getInt(directory, offset) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("invalid central directory header in " + this.path);
+			}
+
+			int nameLength = getShort(directory, offset + 28);
+			int extraLength = getShort(directory, offset + 30);
+			int commentLength = getShort(directory, offset + 32);
+
+			Entry entry = new Entry();
+
+			entry.versionMadeBy = getShort(directory, offset + 4);
+			entry.flags = getShort(directory, offset + 8);
+			entry.method = getShort(directory, offset + 10);
+			entry.time = getShort(directory, offset + 12);
+			entry.date = getShort(directory, offset + 14);
+			entry.crc = getUnsignedInt(directory, offset + 16);
+			entry.compressedSize = getUnsignedInt(directory, offset + 20);
+			entry.size = getUnsignedInt(directory, offset + 24);
+			entry.internalAttributes = getShort(directory, offset + 36);
+			entry.externalAttributes = getUnsignedInt(directory, offset + 38);
+			entry.localHeaderOffset = getUnsignedInt(directory, offset + 42);
+			entry.rawName = Arrays.copyOfRange(directory, offset + CENTRAL_HEADER_SIZE, offset + CENTRAL_HEADER_SIZE + nameLength);
+			entry.name = new String(entry.rawName, ((entry.flags & FLAG_UTF8) != 0) ? StandardCharsets.UTF_8 : CP437);
+
+			readZip64Extra(entry, directory, offset + CENTRAL_HEADER_SIZE + nameLength, extraLength);
+
+			// entries with the same name cannot be told apart when
+			// looked up, and only one of them would be copied
+			if (this.entries.putIfAbsent(entry.name, entry) != null) {
+				throw new ZipException("duplicate entry " + entry.name + " in " + this.path);
+			}
+
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+	}
+
+	private static void readZip64Extra(Entry entry, byte[] directory, int offset, int length) {
+		int end = offset + length;
+
+		while (offset + 4 <= end) {
+			int id = getShort(directory, offset);
+			int size = getShort(directory, offset + 2);
+
+			offset += 4;
+
+			if (id == ZIP64_EXTRA_ID) {
+				int dataEnd = Math.min(offset + size, end);
+
+				// values are only present if they did not fit in the header
+				if (entry.size == 0xFFFFFFFFL && offset + 8 <= dataEnd) {
+					entry.size = getLong(directory, offset);
+					offset += 8;
+				}
+				if (entry.compressedSize == 0xFFFFFFFFL && offset + 8 <= dataEnd) {
+					entry.compressedSize = getLong(directory, offset);
+					offset += 8;
+				}
+				if (entry.localHeaderOffset == 0xFFFFFFFFL && offset + 8 <= dataEnd) {
+					entry.localHeaderOffset = getLong(directory, offset);
+				}
+
+				return;
+			}
+
+			offset += size;
+		}
+	}
+
+	private void read(long position, byte[] dst, int offset, int length) throws IOException {
+		if (position < 0 || position + length > this.channel.size()) {
+			throw new EOFException("unexpected end of " + this.path);
+		}
+
+		ByteBuffer mapped = this.buffer;
+
+		if (mapped != null) {
+			// duplicate the buffer so concurrent reads do not share a position
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.position((int) position);
+			buffer.get(dst, offset, length);
+		} else {
+			ByteBuffer buffer = ByteBuffer.wrap(dst, offset, length);
+
+			while (buffer.hasRemaining()) {
+				if (this.channel.read(buffer, position + (buffer.position() - offset)) < 0) {
+					throw new EOFException("unexpected end of " + this.path);
+				}
+			}
+		}
+	}
+
+	static int getShort(byte[] b, int offset) {
+		return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8);
+	}
+
+	static int getInt(byte[] b, int offset) {
+		return getShort(b, offset) | (getShort(b, offset + 2) << 16);
+	}
+
+	static long getUnsignedInt(byte[] b, int offset) {
+		return getInt(b, offset) & 0xFFFFFFFFL;
+	}
+
+	static long getLong(byte[] b, int offset) {
+		return getUnsignedInt(b, offset) | (getUnsignedInt(b, offset + 4) << 32);
+	}
+
+	public static class Entry {
+
+		String name;
+		// the name as it is stored, so that it can be copied as it is
+		byte[] rawName;
+		int versionMadeBy;
+		int flags;
+		int method;
+		int time;
+		int date;
+		long crc;
+		long compressedSize;
+		long size;
+		int internalAttributes;
+		long externalAttributes;
+		long localHeaderOffset;
+
+		// lazily computed from the local header
+		volatile long dataOffset = -1;
+
+		public String getName() {
+			return this.name;
+		}
+
+		public boolean isDirectory() {
+			return this.name.endsWith("/");
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+	}
+}
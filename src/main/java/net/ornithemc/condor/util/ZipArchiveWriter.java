@@ -0,0 +1,336 @@
+package net.ornithemc.condor.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip archive sequentially. Entries from an existing {@link ZipArchive}
+ * can be copied over as they are stored, without decompressing and compressing
+ * them again. Zip64 records are only written for the values that do not fit
+ * in the regular headers.
+ */
+public class ZipArchiveWriter implements Closeable {
+
+	private static final int VERSION = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	// values at or above these limits are stored in zip64 records
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private final Path path;
+	private final OutputStream out;
+	private final List<CentralEntry> entries;
+
+	private long offset;
+	private boolean closed;
+
+	public ZipArchiveWriter(Path path) throws IOException {
+		this.path = path;
+		this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+		this.entries = new ArrayList<>();
+	}
+
+	/**
+	 * Compress the given data so it can be written to an archive later.
+	 */
+	public static Deflated deflate(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+
+			byte[] buffer = new byte[8192];
+
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				compressed.write(buffer, 0, n);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		return new Deflated(compressed.toByteArray(), crc.getValue(), data.length);
+	}
+
+	/**
+	 * Copy the given entry from the given archive as it is stored.
+	 */
+	public void copyEntry(ZipArchive archive, ZipArchive.Entry entry) throws IOException {
+		CentralEntry centralEntry = new CentralEntry(entry);
+
+		centralEntry.method = entry.method;
+		centralEntry.crc = entry.crc;
+		centralEntry.compressedSize = entry.compressedSize;
+		centralEntry.size = entry.size;
+
+		this.writeEntry(centralEntry, archive.readRaw(entry));
+	}
+
+	/**
+	 * Write new data for the given entry of another archive, keeping its other
+	 * attributes.
+	 */
+	public void writeEntry(ZipArchive.Entry entry, Deflated data) throws IOException {
+		CentralEntry centralEntry = new CentralEntry(entry);
+
+		centralEntry.method = ZipArchive.METHOD_DEFLATED;
+		centralEntry.crc = data.crc;
+		centralEntry.compressedSize = data.data.length;
+		centralEntry.size = data.size;
+
+		this.writeEntry(centralEntry, data.data);
+	}
+
+	private void writeEntry(CentralEntry entry, byte[] data) throws IOException {
+		if (this.closed) {
+			throw new IllegalStateException("archive already closed");
+		}
+
+		entry.localHeaderOffset = this.offset;
+
+		// the local header must have both sizes in its zip64 extra
+		// field if either of them does not fit
+		boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+
+		byte[] header = new byte[ZipArchive.LOCAL_HEADER_SIZE + (zip64 ? 20 : 0)];
+
+		putInt(header, 0, ZipArchive.LOCAL_HEADER_SIGNATURE);
+		putShort(header, 4, zip64 ? VERSION_ZIP64 : VERSION);
+		putShort(header, 6, entry.flags);
+		putShort(header, 8, entry.method);
+		putShort(header, 10, entry.time);
+		putShort(header, 12, entry.date);
+		putInt(header, 14, (int) entry.crc);
+		putInt(header, 18, (int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+		putInt(header, 22, (int) (zip64 ? ZIP64_MAGIC : entry.size));
+		putShort(header, 26, entry.name.length);
+		putShort(header, 28, header.length - ZipArchive.LOCAL_HEADER_SIZE);
+
+		if (zip64) {
+			int offset = ZipArchive.LOCAL_HEADER_SIZE;
+
+			putShort(header, offset, ZipArchive.ZIP64_EXTRA_ID);
+			putShort(header, offset + 2, 16);
+			putLong(header, offset + 4, entry.size);
+			putLong(header, offset + 12, entry.compressedSize);
+		}
+
+		this.write(header, 0, ZipArchive.LOCAL_HEADER_SIZE);
+		this.write(entry.name);
+		this.write(header, ZipArchive.LOCAL_HEADER_SIZE, header.length - ZipArchive.LOCAL_HEADER_SIZE);
+		this.write(data);
+
+		this.entries.add(entry);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+
+		try {
+			long directoryOffset = this.offset;
+
+			for (CentralEntry entry : this.entries) {
+				// only the values that do not fit are in the zip64 extra field,
+				// in this order
+				boolean zip64Size = entry.size >= ZIP64_MAGIC;
+				boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC;
+				boolean zip64Offset = entry.localHeaderOffset >= ZIP64_MAGIC;
+
+				int zip64Length = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+				int extraLength = (zip64Length > 0) ? 4 + zip64Length : 0;
+
+				byte[] header = new byte[ZipArchive.CENTRAL_HEADER_SIZE + extraLength];
+
+				putInt(header, 0, ZipArchive.CENTRAL_HEADER_SIGNATURE);
+				putShort(header, 4, entry.versionMadeBy);
+				putShort(header, 6, (zip64Length > 0) ? VERSION_ZIP64 : VERSION);
+				putShort(header, 8, entry.flags);
+				putShort(header, 10, entry.method);
+				putShort(header, 12, entry.time);
+				putShort(header, 14, entry.date);
+				putInt(header, 16, (int) entry.crc);
+				putInt(header, 20, (int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize));
+				putInt(header, 24, (int) (zip64Size ? ZIP64_MAGIC : entry.size));
+				putShort(header, 28, entry.name.length);
+				putShort(header, 30, extraLength);
+				putShort(header, 32, 0);
+				putShort(header, 34, 0);
+				putShort(header, 36, entry.internalAttributes);
+				putInt(header, 38, (int) entry.externalAttributes);
+				putInt(header, 42, (int) (zip64Offset ? ZIP64_MAGIC : entry.localHeaderOffset));
+
+				if (zip64Length > 0) {
+					int offset = ZipArchive.CENTRAL_HEADER_SIZE;
+
+					putShort(header, offset, ZipArchive.ZIP64_EXTRA_ID);
+					putShort(header, offset + 2, zip64Length);
+					offset += 4;
+
+					if (zip64Size) {
+						putLong(header, offset, entry.size);
+						offset += 8;
+					}
+					if (zip64CompressedSize) {
+						putLong(header, offset, entry.compressedSize);
+						offset += 8;
+					}
+					if (zip64Offset) {
+						putLong(header, offset, entry.localHeaderOffset);
+					}
+				}
+
+				this.write(header, 0, ZipArchive.CENTRAL_HEADER_SIZE);
+				this.write(entry.name);
+				this.write(header, ZipArchive.CENTRAL_HEADER_SIZE, extraLength);
+			}
+
+			long directorySize = this.offset - directoryOffset;
+			long entryCount = this.entries.size();
+
+			boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT || directorySize >= ZIP64_MAGIC || directoryOffset >= ZIP64_MAGIC;
+
+			if (zip64) {
+				long zip64EndOffset = this.offset;
+
+				byte[] zip64End = new byte[ZipArchive.ZIP64_END_HEADER_SIZE + ZipArchive.ZIP64_END_LOCATOR_SIZE];
+
+				putInt(zip64End, 0, ZipArchive.ZIP64_END_HEADER_SIGNATURE);
+				// the size of the record, without the leading 12 bytes
+				putLong(zip64End, 4, ZipArchive.ZIP64_END_HEADER_SIZE - 12);
+				putShort(zip64End, 12, VERSION_ZIP64);
+				putShort(zip64End, 14, VERSION_ZIP64);
+				putLong(zip64End, 24, entryCount);
+				putLong(zip64End, 32, entryCount);
+				putLong(zip64End, 40, directorySize);
+				putLong(zip64End, 48, directoryOffset);
+
+				int locator = ZipArchive.ZIP64_END_HEADER_SIZE;
+
+				putInt(zip64End, locator, ZipArchive.ZIP64_END_LOCATOR_SIGNATURE);
+				putLong(zip64End, locator + 8, zip64EndOffset);
+				putInt(zip64End, locator + 16, 1);
+
+				this.write(zip64End);
+			}
+
+			byte[] end = new byte[ZipArchive.END_HEADER_SIZE];
+
+			putInt(end, 0, ZipArchive.END_HEADER_SIGNATURE);
+			putShort(end, 8, (int) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+			putShort(end, 10, (int) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+			putInt(end, 12, (int) Math.min(directorySize, ZIP64_MAGIC));
+			putInt(end, 16, (int) Math.min(directoryOffset, ZIP64_MAGIC));
+
+			this.write(end);
+		} finally {
+			this.closed = true;
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Stop writing without finishing the archive, and delete what was written
+	 * so far.
+	 */
+	public void abort() throws IOException {
+		if (this.closed) {
+			return;
+		}
+
+		try {
+			this.closed = true;
+			this.out.close();
+		} finally {
+			Files.deleteIfExists(this.path);
+		}
+	}
+
+	private void write(byte[] b) throws IOException {
+		this.write(b, 0, b.length);
+	}
+
+	private void write(byte[] b, int offset, int length) throws IOException {
+		this.out.write(b, offset, length);
+		this.offset += length;
+	}
+
+	private static void putShort(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >>> 8);
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		putShort(b, offset, value);
+		putShort(b, offset + 2, value >>> 16);
+	}
+
+	private static void putLong(byte[] b, int offset, long value) {
+		putInt(b, offset, (int) value);
+		putInt(b, offset + 4, (int) (value >>> 32));
+	}
+
+	/**
+	 * Compressed entry data.
+	 */
+	public static class Deflated {
+
+		final byte[] data;
+		final long crc;
+		final long size;
+
+		Deflated(byte[] data, long crc, long size) {
+			this.data = data;
+			this.crc = crc;
+			this.size = size;
+		}
+	}
+
+	private static class CentralEntry {
+
+		final byte[] name;
+		final int versionMadeBy;
+		final int flags;
+		final int time;
+		final int date;
+		final int internalAttributes;
+		final long externalAttributes;
+
+		int method;
+		long crc;
+		long compressedSize;
+		long size;
+		long localHeaderOffset;
+
+		CentralEntry(ZipArchive.Entry template) {
+			// names are copied as they are stored, together with the
+			// utf-8 flag that tells how they are encoded
+			this.name = template.rawName;
+			this.versionMadeBy = template.versionMadeBy;
+			// sizes and checksum are always known up front, so no data
+			// descriptors are written
+			this.flags = template.flags & ~ZipArchive.FLAG_DATA_DESCRIPTOR;
+			this.time = template.time;
+			this.date = template.date;
+			this.internalAttributes = template.internalAttributes;
+			this.externalAttributes = template.externalAttributes;
+		}
+	}
+}
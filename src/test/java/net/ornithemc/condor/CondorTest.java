@@ -0,0 +1,158 @@
+package net.ornithemc.condor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+public class CondorTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testRelocatedClassToOutput() throws IOException {
+		byte[] foo = createClass("test/Foo");
+		byte[] versioned = createClass("test/Bar");
+
+		Path jar = this.tmp.getRoot().toPath().resolve("in.jar");
+		Path output = this.tmp.getRoot().toPath().resolve("out.jar");
+
+		writeJar(jar, "relocated/test/Foo.class", foo, "META-INF/versions/9/test/Bar.class", versioned);
+
+		Condor.run(jar, Collections.emptyList(), Options.builder().output(output).build());
+
+		try (ZipFile zip = new ZipFile(output.toFile())) {
+			// the relocated class is processed and written back to its own entry
+			assertNotNull(findMethod(read(zip, "relocated/test/Foo.class"), "add").localVariables);
+			assertNull(zip.getEntry("test/Foo.class"));
+			// versioned classes are copied as they are
+			assertArrayEquals(versioned, read(zip, "META-INF/versions/9/test/Bar.class"));
+		}
+	}
+
+	@Test
+	public void testRelocatedClassInPlace() throws IOException {
+		Path jar = this.tmp.getRoot().toPath().resolve("in.jar");
+
+		writeJar(jar, "relocated/test/Foo.class", createClass("test/Foo"));
+
+		Condor.run(jar);
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			assertNotNull(findMethod(read(zip, "relocated/test/Foo.class"), "add").localVariables);
+		}
+	}
+
+	@Test
+	public void testShadedCopy() throws IOException {
+		byte[] foo = createClass("test/Foo");
+
+		Path jar = this.tmp.getRoot().toPath().resolve("in.jar");
+		Path output = this.tmp.getRoot().toPath().resolve("out.jar");
+
+		writeJar(jar, "shaded/test/Foo.class", foo, "test/Foo.class", foo);
+
+		Condor.run(jar, Collections.emptyList(), Options.builder().output(output).build());
+
+		try (ZipFile zip = new ZipFile(output.toFile())) {
+			// the entry at the matching path is processed, the copy is left as it is
+			assertNotNull(findMethod(read(zip, "test/Foo.class"), "add").localVariables);
+			assertArrayEquals(foo, read(zip, "shaded/test/Foo.class"));
+		}
+	}
+
+	/**
+	 * @return a class without debug info, with a static method
+	 *         {@code int add(int a, int b)} that stores to a local
+	 */
+	private static byte[] createClass(String name) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "add", "(II)I", null, null);
+		method.visitCode();
+		// like javac with line numbers only, so local variables have labels to start at
+		Label start = new Label();
+		method.visitLabel(start);
+		method.visitLineNumber(1, start);
+		method.visitVarInsn(Opcodes.ILOAD, 0);
+		method.visitVarInsn(Opcodes.ILOAD, 1);
+		method.visitInsn(Opcodes.IADD);
+		method.visitVarInsn(Opcodes.ISTORE, 2);
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitInsn(Opcodes.IRETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private static void writeJar(Path jar, Object... entries) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new ZipEntry((String) entries[i]));
+				out.write((byte[]) entries[i + 1]);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static byte[] read(ZipFile zip, String name) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		assertNotNull(name, entry);
+
+		try (InputStream in = zip.getInputStream(entry)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			copy(in, out);
+
+			return out.toByteArray();
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+
+		for (int n; (n = in.read(buffer)) > 0; ) {
+			out.write(buffer, 0, n);
+		}
+	}
+
+	private static MethodNode findMethod(byte[] classFile, String name) {
+		ClassNode node = new ClassNode();
+		new ClassReader(classFile).accept(node, 0);
+
+		for (MethodNode method : node.methods) {
+			if (method.name.equals(name)) {
+				return method;
+			}
+		}
+
+		assertEquals("method " + name, null);
+		return null;
+	}
+}
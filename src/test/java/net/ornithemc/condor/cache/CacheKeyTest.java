@@ -0,0 +1,171 @@
+package net.ornithemc.condor.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.condor.Options;
+import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.Libraries;
+import net.ornithemc.condor.representation.MemoryClassSource;
+
+public class CacheKeyTest {
+
+	private static final String BUILD_ID = "test";
+	private static final Options OPTIONS = Options.builder().build();
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testSameHierarchy() throws IOException {
+		String key = computeKey(createClass("test/A", "test/B"), createClass("test/B", "java/lang/Object"));
+
+		assertEquals(key, computeKey(createClass("test/A", "test/B"), createClass("test/B", "java/lang/Object")));
+	}
+
+	@Test
+	public void testSuperClassChanged() throws IOException {
+		byte[] b = createClass("test/B", "java/lang/Object");
+		byte[] c = createClass("test/C", "java/lang/Object");
+
+		String key = computeKey(createClass("test/A", "test/B"), b, c);
+
+		assertNotEquals(key, computeKey(createClass("test/A", "test/C"), b, c));
+		// the super classes of super classes matter too
+		assertNotEquals(key, computeKey(createClass("test/A", "test/B"), createClass("test/B", "test/C"), c));
+	}
+
+	@Test
+	public void testInterfacesChanged() throws IOException {
+		byte[] i = createInterface("test/I");
+		byte[] j = createInterface("test/J");
+
+		String key = computeKey(createClass("test/A", "java/lang/Object", "test/I"), i, j);
+
+		assertNotEquals(key, computeKey(createClass("test/A", "java/lang/Object"), i, j));
+		assertNotEquals(key, computeKey(createClass("test/A", "java/lang/Object", "test/J"), i, j));
+		assertNotEquals(key, computeKey(createClass("test/A", "java/lang/Object", "test/I", "test/J"), i, j));
+		// the super interfaces of interfaces matter too
+		assertNotEquals(key, computeKey(createClass("test/A", "java/lang/Object", "test/I"), createInterface("test/I", "test/J"), j));
+	}
+
+	@Test
+	public void testReferencedClassMissing() throws IOException {
+		String key = computeKey(createClass("test/A", "java/lang/Object"));
+
+		assertNotEquals(key, computeKey());
+	}
+
+	@Test
+	public void testOptionFlagsChanged() throws IOException {
+		List<Options> options = Arrays.asList(
+			Options.builder().build(),
+			Options.builder().removeInvalidEntries().build(),
+			Options.builder().keepParameterNames().build(),
+			Options.builder().obfuscateNames().build(),
+			Options.builder().removeInvalidEntries().keepParameterNames().obfuscateNames().build()
+		);
+		Set<String> keys = new HashSet<>();
+
+		for (Options o : options) {
+			keys.add(computeKey(BUILD_ID, o, createClass("test/A", "java/lang/Object")));
+		}
+
+		assertEquals(options.size(), keys.size());
+
+		// options that do not affect the output do not change the key
+		String key = computeKey(BUILD_ID, OPTIONS, createClass("test/A", "java/lang/Object"));
+
+		assertEquals(key, computeKey(BUILD_ID, Options.builder().threads(4).stats().build(), createClass("test/A", "java/lang/Object")));
+	}
+
+	@Test
+	public void testBuildIdChanged() throws IOException {
+		String key = computeKey(BUILD_ID, OPTIONS, createClass("test/A", "java/lang/Object"));
+
+		assertNotEquals(key, computeKey(BUILD_ID + "2", OPTIONS, createClass("test/A", "java/lang/Object")));
+	}
+
+	@Test
+	public void testDevelopmentBuildIdChanged() throws IOException {
+		// builds without a version are told apart by their class files
+		Path classes = this.tmp.newFolder("classes").toPath();
+		Path classFile = classes.resolve("test").resolve("A.class");
+
+		Files.createDirectories(classFile.getParent());
+		Files.write(classFile, createClass("test/A", "java/lang/Object"));
+
+		String hash = CacheKey.hashClasses(classes);
+
+		assertEquals(hash, CacheKey.hashClasses(classes));
+
+		Files.write(classFile, createClass("test/A", "test/B"));
+
+		assertNotEquals(hash, CacheKey.hashClasses(classes));
+	}
+
+	private static String computeKey(byte[]... classFiles) throws IOException {
+		return computeKey(BUILD_ID, OPTIONS, classFiles);
+	}
+
+	/**
+	 * Compute the key of a class that references test/A, on a classpath of
+	 * the given classes.
+	 */
+	private static String computeKey(String buildId, Options options, byte[]... classFiles) throws IOException {
+		byte[] classFile = createMainClass();
+
+		List<byte[]> sources = new ArrayList<>(Arrays.asList(classFiles));
+		sources.add(classFile);
+
+		Classpath classpath = new Classpath(new MemoryClassSource(sources), new Libraries(Collections.emptyList()), true);
+		classpath.open();
+
+		try {
+			return CacheKey.compute(buildId, classpath, classFile, options);
+		} finally {
+			classpath.close();
+		}
+	}
+
+	private static byte[] createMainClass() {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Main", null, "java/lang/Object", null);
+		writer.visitField(Opcodes.ACC_PRIVATE, "a", "Ltest/A;", null, null).visitEnd();
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private static byte[] createClass(String name, String superName, String... interfaces) {
+		return createClass(Opcodes.ACC_PUBLIC, name, superName, interfaces);
+	}
+
+	private static byte[] createInterface(String name, String... interfaces) {
+		return createClass(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, name, "java/lang/Object", interfaces);
+	}
+
+	private static byte[] createClass(int access, String name, String superName, String... interfaces) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, access, name, null, superName, interfaces);
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+}
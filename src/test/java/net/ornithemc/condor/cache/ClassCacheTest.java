@@ -0,0 +1,121 @@
+package net.ornithemc.condor.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassCacheTest {
+
+	private static final String KEY = CacheKey.hash(new byte[] { 1, 2, 3 });
+	private static final byte[] CLASS_FILE = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52 };
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path directory;
+	private ClassCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = this.tmp.newFolder("cache").toPath();
+		this.cache = new ClassCache(this.directory, Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testMissing() throws IOException {
+		assertNull(this.cache.get(KEY));
+	}
+
+	@Test
+	public void testUnchanged() throws IOException {
+		this.cache.putUnchanged(KEY);
+
+		assertSame(ClassCache.Entry.UNCHANGED, this.cache.get(KEY));
+	}
+
+	@Test
+	public void testChanged() throws IOException {
+		this.cache.put(KEY, CLASS_FILE);
+
+		ClassCache.Entry entry = this.cache.get(KEY);
+
+		assertNotNull(entry);
+		assertArrayEquals(CLASS_FILE, entry.getClassFile());
+	}
+
+	@Test
+	public void testEmptyEntry() throws IOException {
+		this.assertCorrupt(new byte[0]);
+	}
+
+	@Test
+	public void testUnknownType() throws IOException {
+		this.cache.put(KEY, CLASS_FILE);
+
+		byte[] data = Files.readAllBytes(this.getFile());
+		data[0] = 2;
+
+		this.assertCorrupt(data);
+	}
+
+	@Test
+	public void testChangedWithoutBody() throws IOException {
+		this.cache.put(KEY, CLASS_FILE);
+
+		this.assertCorrupt(Arrays.copyOf(Files.readAllBytes(this.getFile()), 1));
+	}
+
+	@Test
+	public void testTruncatedBody() throws IOException {
+		this.cache.put(KEY, CLASS_FILE);
+
+		byte[] data = Files.readAllBytes(this.getFile());
+
+		for (int length = 1; length < data.length; length++) {
+			this.assertCorrupt(Arrays.copyOf(data, length));
+		}
+	}
+
+	@Test
+	public void testUnchangedWithBody() throws IOException {
+		this.cache.putUnchanged(KEY);
+
+		this.assertCorrupt(Arrays.copyOf(Files.readAllBytes(this.getFile()), 2));
+	}
+
+	/**
+	 * Check that an entry with the given data is a miss, and is removed.
+	 */
+	private void assertCorrupt(byte[] data) throws IOException {
+		Path file = this.getFile();
+
+		Files.createDirectories(file.getParent());
+		Files.write(file, data);
+
+		assertNull(this.cache.get(KEY));
+		assertFalse(Files.exists(file));
+
+		// and it can be stored again
+		this.cache.put(KEY, CLASS_FILE);
+
+		assertTrue(Files.exists(file));
+		assertArrayEquals(CLASS_FILE, this.cache.get(KEY).getClassFile());
+	}
+
+	private Path getFile() {
+		return this.directory.resolve(KEY.substring(0, 2)).resolve(KEY.substring(2));
+	}
+}
@@ -0,0 +1,448 @@
+package net.ornithemc.condor.lvt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.ornithemc.condor.representation.Classpath;
+import net.ornithemc.condor.representation.Libraries;
+import net.ornithemc.condor.representation.MemoryClassSource;
+
+public class FrameBuilderTest implements Opcodes {
+
+	private static final String WIDE_CLASS = "test/Wide";
+	// enough locals for several words in each local set
+	private static final int WIDE_LOCALS = 80;
+
+	private Classpath classpath;
+
+	@Before
+	public void setUp() throws IOException {
+		List<byte[]> classFiles = new ArrayList<>();
+		classFiles.add(readClassFile(Samples.class));
+		classFiles.add(createWideClass());
+
+		this.classpath = new Classpath(new MemoryClassSource(classFiles), new Libraries(Collections.emptyList()), true);
+		this.classpath.open();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.classpath.close();
+	}
+
+	@Test
+	public void testLoops() throws IOException {
+		this.assertSameLiveness(readClassFile(Samples.class), "loops");
+	}
+
+	@Test
+	public void testTryCatch() throws IOException {
+		this.assertSameLiveness(readClassFile(Samples.class), "tryCatch");
+	}
+
+	@Test
+	public void testTryCatchInLoop() throws IOException {
+		this.assertSameLiveness(readClassFile(Samples.class), "tryCatchInLoop");
+	}
+
+	@Test
+	public void testWideLocals() {
+		this.assertSameLiveness(createWideClass(), "wide");
+	}
+
+	/**
+	 * Generate the lvt of the given method with both the block solver and
+	 * repeated passes over all insns, and check that the results match.
+	 */
+	private void assertSameLiveness(byte[] classFile, String methodName) {
+		InstructionMarker marker = new InstructionMarker();
+		RecordingFrameBuilder frames = new RecordingFrameBuilder(marker);
+		ClassNode cls = readClass(classFile);
+		MethodNode method = findMethod(cls, methodName);
+
+		LocalVariableTableGenerator generator = new LocalVariableTableGenerator(marker, frames);
+		generator.init(this.classpath, cls, method);
+		generator.run();
+
+		InstructionMarker expectedMarker = new InstructionMarker();
+		InsnFixpointFrameBuilder expectedFrames = new InsnFixpointFrameBuilder(expectedMarker);
+		ClassNode expectedCls = readClass(classFile);
+		MethodNode expectedMethod = findMethod(expectedCls, methodName);
+
+		LocalVariableTableGenerator expectedGenerator = new LocalVariableTableGenerator(expectedMarker, expectedFrames);
+		expectedGenerator.init(this.classpath, expectedCls, expectedMethod);
+		expectedGenerator.run();
+
+		assertEquals(expectedFrames.insnCount, frames.insnCount);
+		assertTrue(expectedFrames.passes > 1);
+
+		for (int insnIndex = 0; insnIndex < frames.insnCount; insnIndex++) {
+			for (int varIndex = 0; varIndex < method.maxLocals; varIndex++) {
+				String message = "liveness of local " + varIndex + " differs at insn " + insnIndex;
+
+				assertEquals(message, expectedFrames.solved.get(insnIndex, varIndex), frames.solved.get(insnIndex, varIndex));
+				assertEquals(message, expectedFrames.livenesses.get(insnIndex, varIndex), frames.livenesses.get(insnIndex, varIndex));
+			}
+		}
+
+		assertEquals(describe(expectedMethod), describe(method));
+	}
+
+	private static List<String> describe(MethodNode method) {
+		List<String> entries = new ArrayList<>();
+
+		for (LocalVariableNode local : method.localVariables) {
+			int start = method.instructions.indexOf(local.start);
+			int end = method.instructions.indexOf(local.end);
+
+			entries.add(local.index + " " + local.name + " " + local.desc + " " + start + "-" + end);
+		}
+
+		return entries;
+	}
+
+	private static ClassNode readClass(byte[] classFile) {
+		ClassNode node = new ClassNode();
+		new ClassReader(classFile).accept(node, 0);
+
+		// the lvt is generated from scratch
+		for (MethodNode method : node.methods) {
+			method.localVariables = null;
+		}
+
+		return node;
+	}
+
+	private static MethodNode findMethod(ClassNode cls, String name) {
+		for (MethodNode method : cls.methods) {
+			if (method.name.equals(name)) {
+				return method;
+			}
+		}
+
+		throw new IllegalArgumentException("no method " + name + " in " + cls.name);
+	}
+
+	private static byte[] readClassFile(Class<?> type) throws IOException {
+		String name = type.getName();
+
+		try (InputStream in = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+
+			for (int n; (n = in.read(buffer)) > 0; ) {
+				out.write(buffer, 0, n);
+			}
+
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Create a class with a method that uses more than 64 locals, where only
+	 * locals beyond the first word of each local set are live across a loop
+	 * and a try-catch block.
+	 */
+	private static byte[] createWideClass() {
+		int counter = WIDE_LOCALS;
+		int sum = WIDE_LOCALS + 1;
+		int result = WIDE_LOCALS + 2;
+		int exception = WIDE_LOCALS + 3;
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_8, ACC_PUBLIC, WIDE_CLASS, null, "java/lang/Object", null);
+
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "wide", "(I)I", null, null);
+		mv.visitCode();
+
+		Label start = new Label();
+		mv.visitLabel(start);
+		mv.visitLineNumber(1, start);
+
+		for (int varIndex = 1; varIndex <= WIDE_LOCALS; varIndex++) {
+			mv.visitVarInsn(ILOAD, 0);
+			mv.visitLdcInsn(varIndex);
+			mv.visitInsn(IADD);
+			mv.visitVarInsn(ISTORE, varIndex);
+		}
+
+		// the locals in the first word are summed up before the loop
+		mv.visitInsn(ICONST_0);
+		mv.visitVarInsn(ISTORE, sum);
+
+		for (int varIndex = 0; varIndex < Long.SIZE; varIndex++) {
+			mv.visitVarInsn(ILOAD, sum);
+			mv.visitVarInsn(ILOAD, varIndex);
+			mv.visitInsn(IADD);
+			mv.visitVarInsn(ISTORE, sum);
+		}
+
+		// only the even locals are modified in the loop, the odd locals
+		// are live through it until they are summed at the end
+		Label loop = new Label();
+		Label skip = new Label();
+		Label loopEnd = new Label();
+
+		mv.visitLabel(loop);
+		mv.visitVarInsn(ILOAD, counter);
+		mv.visitJumpInsn(IFLE, loopEnd);
+
+		for (int varIndex = Long.SIZE + 2; varIndex < WIDE_LOCALS; varIndex += 2) {
+			mv.visitVarInsn(ILOAD, varIndex);
+			mv.visitVarInsn(ILOAD, varIndex - 1);
+			mv.visitInsn(IADD);
+			mv.visitVarInsn(ISTORE, varIndex);
+		}
+
+		mv.visitVarInsn(ILOAD, Long.SIZE + 2);
+		mv.visitJumpInsn(IFEQ, skip);
+		mv.visitVarInsn(ILOAD, sum);
+		mv.visitInsn(ICONST_1);
+		mv.visitInsn(IADD);
+		mv.visitVarInsn(ISTORE, sum);
+		mv.visitLabel(skip);
+		mv.visitIincInsn(counter, -1);
+		mv.visitJumpInsn(GOTO, loop);
+		mv.visitLabel(loopEnd);
+
+		Label tryStart = new Label();
+		Label tryEnd = new Label();
+		Label handler = new Label();
+		Label after = new Label();
+
+		mv.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/ArithmeticException");
+		mv.visitLabel(tryStart);
+		mv.visitVarInsn(ILOAD, WIDE_LOCALS - 10);
+		mv.visitVarInsn(ILOAD, counter);
+		mv.visitInsn(IDIV);
+		mv.visitVarInsn(ISTORE, result);
+		mv.visitLabel(tryEnd);
+		mv.visitJumpInsn(GOTO, after);
+		mv.visitLabel(handler);
+		mv.visitVarInsn(ASTORE, exception);
+		mv.visitVarInsn(ILOAD, WIDE_LOCALS - 4);
+		mv.visitVarInsn(ISTORE, result);
+		mv.visitLabel(after);
+
+		mv.visitVarInsn(ILOAD, result);
+		mv.visitVarInsn(ILOAD, sum);
+		mv.visitInsn(IADD);
+
+		for (int varIndex = Long.SIZE + 1; varIndex < WIDE_LOCALS; varIndex += 2) {
+			mv.visitVarInsn(ILOAD, varIndex);
+			mv.visitInsn(IADD);
+		}
+
+		mv.visitInsn(IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * A frame builder that records the liveness of each insn once it has
+	 * been solved, before it is extended for store insns.
+	 */
+	private static class RecordingFrameBuilder extends FrameBuilder {
+
+		MethodNode method;
+		// the lvt builder may add insns, which have no liveness
+		int insnCount;
+		LocalSets solved;
+
+		RecordingFrameBuilder(InstructionMarker marker) {
+			super(marker);
+		}
+
+		@Override
+		public void init(Classpath classpath, ClassNode cls, MethodNode method) {
+			super.init(classpath, cls, method);
+
+			this.method = method;
+		}
+
+		@Override
+		void solveLiveness() {
+			super.solveLiveness();
+			this.recordLiveness();
+		}
+
+		void recordLiveness() {
+			this.insnCount = this.method.instructions.size();
+			this.solved = new LocalSets(this.insnCount, this.method.maxLocals);
+
+			for (int insnIndex = 0; insnIndex < this.insnCount; insnIndex++) {
+				this.solved.copy(insnIndex, this.livenesses, insnIndex);
+			}
+		}
+	}
+
+	/**
+	 * A frame builder that finds the liveness by passing over all insns
+	 * until nothing changes, as was done before the block solver.
+	 */
+	private static class InsnFixpointFrameBuilder extends RecordingFrameBuilder {
+
+		private final InstructionMarker marker;
+
+		int passes;
+
+		InsnFixpointFrameBuilder(InstructionMarker marker) {
+			super(marker);
+
+			this.marker = marker;
+		}
+
+		@Override
+		void solveLiveness() {
+			int maxLocals = this.method.maxLocals;
+			int lastInsnIndex = this.method.instructions.size() - 1;
+
+			LocalSets liveness = new LocalSets(1, maxLocals);
+			boolean updateLiveness = true;
+
+			while (updateLiveness) {
+				updateLiveness = false;
+				this.passes++;
+
+				for (int insnIndex = lastInsnIndex; insnIndex >= 0; insnIndex--) {
+					StackFrame frame = this.getFrame(insnIndex);
+
+					if (frame == null) {
+						continue;
+					}
+
+					// find liveness after execution of this insn
+					liveness.clear(0);
+
+					int[] dsts = this.marker.jumpTargets[insnIndex];
+
+					if (dsts != null) {
+						for (int dst : dsts) {
+							liveness.or(0, this.livenesses, dst);
+						}
+					} else if (insnIndex < lastInsnIndex) {
+						// exits without jumps take the liveness of the next insn as well
+						liveness.or(0, this.livenesses, insnIndex + 1);
+					}
+
+					this.computeLivenessBefore(insnIndex, frame, liveness);
+
+					// update the liveness bit by bit, independent of the set
+					// operations used by the block solver
+					for (int varIndex = 0; varIndex < maxLocals; varIndex++) {
+						Type local = frame.getLocal(varIndex);
+
+						// mark any vars as dead if they do not exist in the frame
+						if (local == null || local == Type.VOID_TYPE) {
+							continue;
+						}
+
+						if (liveness.get(0, varIndex) && !this.livenesses.get(insnIndex, varIndex)) {
+							this.livenesses.set(insnIndex, varIndex);
+							updateLiveness = true;
+						}
+					}
+				}
+			}
+
+			this.recordLiveness();
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static class Samples {
+
+		static int loops(int[] values) {
+			int sum = 0;
+
+			for (int i = 0; i < values.length; i++) {
+				int value = values[i];
+
+				if (value < 0) {
+					continue;
+				}
+
+				for (int j = 0; j < value; j++) {
+					sum += j;
+				}
+			}
+
+			int halvings = 0;
+
+			while (sum > 100) {
+				sum /= 2;
+				halvings++;
+			}
+
+			return sum + halvings;
+		}
+
+		static String tryCatch(String s) {
+			String result;
+			int length = s.length();
+
+			try {
+				int value = Integer.parseInt(s);
+				result = "int " + value;
+			} catch (NumberFormatException e) {
+				result = "nan " + e.getMessage();
+			} finally {
+				length++;
+			}
+
+			return result + length;
+		}
+
+		static int tryCatchInLoop(String[] values) {
+			int sum = 0;
+			int failures = 0;
+
+			for (String value : values) {
+				int parsed;
+
+				try {
+					parsed = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					failures++;
+
+					if (failures > 3) {
+						break;
+					}
+
+					continue;
+				}
+
+				do {
+					sum += parsed;
+					parsed /= 2;
+				} while (parsed > 0);
+			}
+
+			return sum - failures;
+		}
+	}
+}
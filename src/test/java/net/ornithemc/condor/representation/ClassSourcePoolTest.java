@@ -0,0 +1,96 @@
+package net.ornithemc.condor.representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class ClassSourcePoolTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testReplacedLibraryIsClosed() throws IOException {
+		// mappings can only be inspected on linux
+		assumeTrue(Files.isReadable(Paths.get("/proc/self/maps")));
+
+		Path lib = this.tmp.getRoot().toPath().resolve("lib.jar");
+		writeJar(lib, "test/A");
+		String file = lib.toRealPath().toString();
+
+		List<Path> paths = Collections.singletonList(lib);
+
+		try (ClassSourcePool pool = new ClassSourcePool()) {
+			Libraries first = pool.acquire(paths);
+			assertNotNull(first.getClass("test/A"));
+
+			// replace the jar while it is in use
+			Path replacement = this.tmp.getRoot().toPath().resolve("lib.jar.tmp");
+			writeJar(replacement, "test/A", "test/B");
+			Files.move(replacement, lib, StandardCopyOption.REPLACE_EXISTING);
+
+			Libraries second = pool.acquire(paths);
+			assertNotSame(first, second);
+			assertNotNull(second.getClass("test/B"));
+
+			// the old jar is still in use
+			assertEquals(1, countMappings(file + " (deleted)"));
+			assertEquals(1, countMappings(file));
+
+			pool.release(first);
+
+			// the old jar is closed once it is no longer used,
+			// while the new one is kept open
+			assertEquals(0, countMappings(file + " (deleted)"));
+			assertEquals(1, countMappings(file));
+
+			pool.release(second);
+		}
+
+		assertEquals(0, countMappings(file));
+	}
+
+	private static int countMappings(String file) throws IOException {
+		int count = 0;
+
+		for (String line : Files.readAllLines(Paths.get("/proc/self/maps"))) {
+			if (line.endsWith(" " + file)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private static void writeJar(Path path, String... classNames) throws IOException {
+		try (OutputStream os = Files.newOutputStream(path); ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (String className : classNames) {
+				ClassWriter writer = new ClassWriter(0);
+				writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+				writer.visitEnd();
+
+				zos.putNextEntry(new ZipEntry(className + ".class"));
+				zos.write(writer.toByteArray());
+				zos.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package net.ornithemc.condor.representation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+public class ClasspathTest {
+
+	private Classpath classpath;
+
+	@Before
+	public void setUp() throws IOException {
+		this.classpath = new Classpath(new MemoryClassSource(Arrays.asList(
+			createClass("test/A", "java/lang/Object"),
+			createClass("test/B", "test/A"),
+			createClass("test/C", "test/A")
+		)), new Libraries(Collections.emptyList()), true);
+		this.classpath.open();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.classpath.close();
+	}
+
+	@Test
+	public void testCommonSuperTypeEitherOrder() {
+		Type a = Type.getObjectType("test/A");
+		Type b = Type.getObjectType("test/B");
+		Type c = Type.getObjectType("test/C");
+
+		assertEquals(a, this.classpath.getCommonSuperType(b, c));
+		assertEquals(a, this.classpath.getCommonSuperType(c, b));
+
+		Type bs = Type.getType("[[Ltest/B;");
+		Type cs = Type.getType("[[Ltest/C;");
+
+		assertEquals(Type.getType("[[Ltest/A;"), this.classpath.getCommonSuperType(bs, cs));
+		assertEquals(Type.getType("[[Ltest/A;"), this.classpath.getCommonSuperType(cs, bs));
+
+		// both orders of each pair share a memo entry
+		assertEquals(2, this.classpath.getCommonSuperTypeMisses());
+		assertEquals(2, this.classpath.getCommonSuperTypeHits());
+	}
+
+	private static byte[] createClass(String name, String superName) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,135 @@
+package net.ornithemc.condor.representation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class HierarchyIndexTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		Path jar = this.tmp.getRoot().toPath().resolve("lib.jar");
+		Path index = this.tmp.getRoot().toPath().resolve("lib" + HierarchyIndex.EXTENSION);
+
+		writeJar(jar,
+			"test/A.class", createClass(Opcodes.ACC_PUBLIC, "test/A", "test/B", "test/I", "test/J"),
+			"test/B.class", createClass(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "test/B", "java/lang/Object"),
+			"test/I.class", createClass(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "test/I", "java/lang/Object"),
+			"test/Über.class", createClass(Opcodes.ACC_PUBLIC, "test/Über", "test/A"));
+
+		writeIndex(jar, index);
+
+		HierarchyIndex source = new HierarchyIndex(index);
+		source.open();
+
+		try {
+			assertEquals(Arrays.asList("test/A", "test/B", "test/I", "test/Über"), sorted(source.getClassNames()));
+
+			ClassInstance a = source.getClass("test/A");
+
+			assertEquals(Opcodes.ACC_PUBLIC, a.getAccess());
+			assertEquals("test/B", a.getSuperClassName());
+			assertArrayEquals(new String[] { "test/I", "test/J" }, a.getInterfaceNamesInternal());
+
+			assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, source.getClass("test/I").getAccess());
+			assertEquals("test/A", source.getClass("test/Über").getSuperClassName());
+			assertNull(source.getClass("test/J"));
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testVersionedEntries() throws IOException {
+		Path jar = this.tmp.getRoot().toPath().resolve("lib.jar");
+		Path index = this.tmp.getRoot().toPath().resolve("lib" + HierarchyIndex.EXTENSION);
+
+		// versioned classes of multi-release jars are not classes of their own,
+		// and must not replace the base classes either
+		writeJar(jar,
+			"META-INF/versions/9/test/A.class", createClass(Opcodes.ACC_PUBLIC, "test/A", "test/C"),
+			"test/A.class", createClass(Opcodes.ACC_PUBLIC, "test/A", "test/B"),
+			"META-INF/versions/11/test/D.class", createClass(Opcodes.ACC_PUBLIC, "test/D", "java/lang/Object"));
+
+		JarInstance library = new JarInstance(jar, false);
+		library.open();
+
+		try {
+			assertEquals(Arrays.asList("test/A"), sorted(library.getClassNames()));
+			assertEquals("test/B", library.getClass("test/A").getSuperClassName());
+		} finally {
+			library.close();
+		}
+
+		writeIndex(jar, index);
+
+		HierarchyIndex source = new HierarchyIndex(index);
+		source.open();
+
+		try {
+			assertEquals(Arrays.asList("test/A"), sorted(source.getClassNames()));
+			assertEquals("test/B", source.getClass("test/A").getSuperClassName());
+		} finally {
+			source.close();
+		}
+	}
+
+	private static void writeIndex(Path jar, Path index) throws IOException {
+		JarInstance library = new JarInstance(jar, false);
+		library.open();
+
+		try {
+			HierarchyIndex.write(library, index);
+		} finally {
+			library.close();
+		}
+	}
+
+	private static List<String> sorted(Iterable<String> names) {
+		List<String> list = new ArrayList<>();
+
+		for (String name : names) {
+			list.add(name);
+		}
+
+		list.sort(null);
+
+		return list;
+	}
+
+	private static byte[] createClass(int access, String name, String superName, String... interfaces) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, access, name, null, superName, interfaces);
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private static void writeJar(Path jar, Object... entries) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new ZipEntry((String) entries[i]));
+				out.write((byte[]) entries[i + 1]);
+				out.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package net.ornithemc.condor.representation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class NamePoolTest {
+
+	@Test
+	public void testShared() {
+		NamePool pool = new NamePool();
+
+		String name = pool.get(new String("test/A"));
+		String[] names = pool.get(new String[] { new String("test/I"), new String("test/J") });
+
+		assertSame(name, pool.get(new String("test/A")));
+		assertSame(names, pool.get(new String[] { "test/I", "test/J" }));
+		// array elements are pooled as well
+		assertSame(names[0], pool.get(new String("test/I")));
+	}
+
+	@Test
+	public void testClear() {
+		NamePool pool = new NamePool();
+
+		String name = pool.get(new String("test/A"));
+		String[] names = pool.get(new String[] { "test/I" });
+
+		pool.clear();
+
+		String newName = new String("test/A");
+		String[] newNames = new String[] { "test/I" };
+
+		assertSame(newName, pool.get(newName));
+		assertArrayEquals(names, pool.get(newNames));
+		assertEquals(name, newName);
+	}
+
+	@Test
+	public void testClearedOnClose() throws IOException {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/A", null, "test/B", null);
+		writer.visitEnd();
+
+		MemoryClassSource source = new MemoryClassSource(Collections.singletonList(writer.toByteArray()));
+		source.open();
+
+		ClassInstance cls = source.getClass("test/A");
+
+		assertSame(cls.getSuperClassName(), source.getNamePool().get(new String("test/B")));
+
+		source.close();
+
+		// classes keep their names, but the pool no longer holds them
+		String superName = new String("test/B");
+
+		assertSame(superName, source.getNamePool().get(superName));
+		assertEquals("test/B", cls.getSuperClassName());
+	}
+}
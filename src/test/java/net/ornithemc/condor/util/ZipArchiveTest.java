@@ -0,0 +1,324 @@
+package net.ornithemc.condor.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipArchiveTest {
+
+	private static final Charset CP437 = Charset.forName("IBM437");
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testCopyAndWrite() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a/Stored.class", bytes("stored", 100));
+		entries.put("a/Deflated.class", bytes("deflated", 1000));
+		entries.put("a/Modified.class", bytes("modified", 1000));
+		entries.put("empty/", new byte[0]);
+
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, entries, StandardCharsets.UTF_8, "a/Stored.class");
+
+		byte[] modified = bytes("new data", 500);
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+
+		try (ZipArchive archive = ZipArchive.open(source, true)) {
+			try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+				for (ZipArchive.Entry entry : archive.getEntries()) {
+					if (entry.getName().equals("a/Modified.class")) {
+						writer.writeEntry(entry, ZipArchiveWriter.deflate(modified));
+					} else {
+						writer.copyEntry(archive, entry);
+					}
+				}
+			}
+		}
+
+		entries.put("a/Modified.class", modified);
+
+		assertEntries(output, entries, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testDataDescriptors() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a/A.class", bytes("a", 1000));
+		entries.put("a/B.class", bytes("b", 1000));
+
+		// deflated entries are written with data descriptors
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, entries, StandardCharsets.UTF_8);
+
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+		copy(source, output);
+
+		try (ZipArchive archive = ZipArchive.open(source, false)) {
+			for (ZipArchive.Entry entry : archive.getEntries()) {
+				assertNotEquals(0, entry.flags & ZipArchive.FLAG_DATA_DESCRIPTOR);
+			}
+		}
+		try (ZipArchive archive = ZipArchive.open(output, false)) {
+			for (ZipArchive.Entry entry : archive.getEntries()) {
+				assertEquals(0, entry.flags & ZipArchive.FLAG_DATA_DESCRIPTOR);
+			}
+		}
+
+		assertEntries(output, entries, StandardCharsets.UTF_8);
+
+		// without data descriptors, the sizes must be in the local headers
+		try (ZipInputStream in = new ZipInputStream(Files.newInputStream(output))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				ZipEntry zipEntry = in.getNextEntry();
+
+				assertEquals(entry.getKey(), zipEntry.getName());
+				assertEquals(entry.getValue().length, zipEntry.getSize());
+				assertArrayEquals(entry.getValue(), readAll(in));
+			}
+		}
+	}
+
+	@Test
+	public void testUtf8Names() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("über/日本.class", bytes("utf-8", 100));
+		entries.put("plain/Ascii.class", bytes("ascii", 100));
+
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, entries, StandardCharsets.UTF_8);
+
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+		copy(source, output);
+
+		assertEntries(output, entries, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testCp437Names() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("été/Ça.class", bytes("cp437", 100));
+
+		// names in other encodings than utf-8 are written without the utf-8 flag
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, entries, CP437);
+
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+		copy(source, output);
+
+		try (ZipArchive archive = ZipArchive.open(source, false)) {
+			assertNotNull(archive.getEntry("été/Ça.class"));
+		}
+
+		assertEntries(output, entries, CP437);
+	}
+
+	@Test
+	public void testZip64EndRecord() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		for (int i = 0; i < 70000; i++) {
+			entries.put("e/" + i, bytes(Integer.toString(i), 1));
+		}
+
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, entries, StandardCharsets.UTF_8);
+
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+		copy(source, output);
+
+		byte[] data = Files.readAllBytes(output);
+		int end = data.length - ZipArchive.END_HEADER_SIZE;
+		int locator = end - ZipArchive.ZIP64_END_LOCATOR_SIZE;
+
+		// the entry count does not fit the end record and is in the zip64 end record
+		assertEquals(ZipArchive.END_HEADER_SIGNATURE, ZipArchive.getInt(data, end));
+		assertEquals(0xFFFF, ZipArchive.getShort(data, end + 10));
+		assertEquals(ZipArchive.ZIP64_END_LOCATOR_SIGNATURE, ZipArchive.getInt(data, locator));
+
+		int zip64End = (int) ZipArchive.getLong(data, locator + 8);
+
+		assertEquals(ZipArchive.ZIP64_END_HEADER_SIGNATURE, ZipArchive.getInt(data, zip64End));
+		assertEquals(70000, ZipArchive.getLong(data, zip64End + 32));
+
+		assertEntries(output, entries, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testDuplicateEntries() throws IOException {
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, Collections.singletonMap("a/A.class", bytes("a", 100)), StandardCharsets.UTF_8);
+
+		Path output = this.tmp.getRoot().toPath().resolve("output.zip");
+
+		try (ZipArchive archive = ZipArchive.open(source, false)) {
+			try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+				writer.copyEntry(archive, archive.getEntry("a/A.class"));
+				writer.copyEntry(archive, archive.getEntry("a/A.class"));
+			}
+		}
+
+		try (ZipArchive archive = ZipArchive.open(output, false)) {
+			fail("duplicate entries were accepted");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCloseUnmaps() throws IOException {
+		// mappings can only be inspected on linux
+		assumeTrue(Files.isReadable(Paths.get("/proc/self/maps")));
+
+		Path source = this.tmp.getRoot().toPath().resolve("source.zip");
+		writeZip(source, Collections.singletonMap("a/A.class", bytes("a", 100)), StandardCharsets.UTF_8);
+
+		ZipArchive archive = ZipArchive.open(source, true);
+
+		try {
+			assertTrue(isMapped(source));
+		} finally {
+			archive.close();
+		}
+
+		assertFalse(isMapped(source));
+
+		try {
+			archive.read(archive.getEntry("a/A.class"));
+			fail("closed archive was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static boolean isMapped(Path path) throws IOException {
+		String file = path.toRealPath().toString();
+
+		for (String line : Files.readAllLines(Paths.get("/proc/self/maps"))) {
+			if (line.endsWith(" " + file)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Copy all entries of the given archive as they are stored.
+	 */
+	private static void copy(Path source, Path output) throws IOException {
+		try (ZipArchive archive = ZipArchive.open(source, false)) {
+			try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+				for (ZipArchive.Entry entry : archive.getEntries()) {
+					writer.copyEntry(archive, entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check the entries of the given archive with both {@link ZipArchive}
+	 * and {@link ZipFile}.
+	 */
+	private static void assertEntries(Path path, Map<String, byte[]> entries, Charset charset) throws IOException {
+		try (ZipArchive archive = ZipArchive.open(path, false)) {
+			List<String> names = new ArrayList<>();
+
+			for (ZipArchive.Entry entry : archive.getEntries()) {
+				names.add(entry.getName());
+				assertArrayEquals(entry.getName(), entries.get(entry.getName()), archive.read(entry));
+			}
+
+			assertEquals(new ArrayList<>(entries.keySet()), names);
+		}
+
+		try (ZipFile zip = new ZipFile(path.toFile(), charset)) {
+			List<String> names = new ArrayList<>();
+
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				names.add(entry.getName());
+
+				try (InputStream in = zip.getInputStream(entry)) {
+					assertArrayEquals(entry.getName(), entries.get(entry.getName()), readAll(in));
+				}
+			}
+
+			assertEquals(new ArrayList<>(entries.keySet()), names);
+		}
+	}
+
+	private static void writeZip(Path path, Map<String, byte[]> entries, Charset charset, String... storedEntries) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path), charset)) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				ZipEntry zipEntry = new ZipEntry(entry.getKey());
+				byte[] data = entry.getValue();
+
+				for (String storedEntry : storedEntries) {
+					if (storedEntry.equals(entry.getKey())) {
+						CRC32 crc = new CRC32();
+						crc.update(data);
+
+						zipEntry.setMethod(ZipEntry.STORED);
+						zipEntry.setSize(data.length);
+						zipEntry.setCrc(crc.getValue());
+					}
+				}
+
+				out.putNextEntry(zipEntry);
+				out.write(data);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static byte[] bytes(String text, int repeat) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < repeat; i++) {
+			sb.append(text).append(i % 10);
+		}
+
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+
+		for (int n; (n = in.read(buffer)) > 0; ) {
+			out.write(buffer, 0, n);
+		}
+
+		return out.toByteArray();
+	}
+}